@@ -1,21 +1,30 @@
 package hu.webarticum.strex;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
-import java.text.Collator;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.NoSuchElementException;
-import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.function.Function;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>Represents a sorted collection of strings generated from the given regular expression.</p>
@@ -32,335 +41,222 @@ import java.util.regex.Pattern;
  */
 public class Strex implements Iterable<String> {
     
-    private static final Pattern QUANTIFIED_PART_PATTERN = Pattern.compile(
-            "(?:(\\\\\\\\)*(\\\\)?)(\\[(?:[^\\\\\\[\\]]|\\\\.)+\\]|[^\\\\\\\\\\[\\]])\\{(\\d+)\\}"); // NOSONAR: this pattern is safe enough
-
-    private static final Pattern START_PATTERN = Pattern.compile("^\\^*");
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
     
-    private static final Pattern END_PATTERN = Pattern.compile("(\\\\*)\\$\\$*$");
     
-    private static final Pattern ATOM_PATTERN = Pattern.compile(
-            "([^\\\\\\[])|\\\\(.)|\\[(\\^)?((?:[^\\\\\\]]|\\\\.)+)\\]"); // NOSONAR: this pattern is safe enough
+    private final StrexOrder order;
     
-    private static final Pattern SET_ITEM_PATTERN = Pattern.compile(
-            "([^\\\\])|\\\\(.)");
-
+    private final StrexAutomaton automaton;
     
-    private static final Collator collator = Collator.getInstance(Locale.US);
+    private final List<StrexSegment> segments;
     
+    private final int[] segmentStarts;
     
-    private final List<char[]> parts;
+    private final int length;
     
     private final BigInteger size;
-
     
-    private Strex(String pattern) {
-        String preprocessedPattern = preprocess(pattern);
-        this.parts = parse(preprocessedPattern);
-        this.size = calculateSize(this.parts);
-    }
+    private final long longSize;
+    
+    private final BigInteger[] weights;
+    
+    private final long[] longWeights;
 
-    private static String preprocess(String pattern) {
-        Matcher matcher = QUANTIFIED_PART_PATTERN.matcher(pattern);
-        String unfolded = replaceAll(matcher, Strex::unfoldQuantifiers);
-        return removeBoundariesFromStartAndEnd(unfolded);
-    }
     
-    private static String unfoldQuantifiers(MatchResult matchResult) {
-        String unrelatedSlashes = Optional.ofNullable(matchResult.group(1)).orElse("");
-        boolean slashed = matchResult.group(2) != null;
-        String rawContentPart = matchResult.group(3);
-        String[] contentTokens = splitContentPart(rawContentPart, slashed);
-        String preContent = contentTokens[0];
-        String content = contentTokens[1];
-        int count = Integer.parseInt(matchResult.group(4));
-        
-        StringBuilder resultBuilder = new StringBuilder();
-        resultBuilder.append(unrelatedSlashes);
-        resultBuilder.append(preContent);
-        for (int i = 0; i < count; i++) {
-            resultBuilder.append(content);
-        }
-        return Matcher.quoteReplacement(resultBuilder.toString());
+    private Strex(StrexNode root, StrexOrder order) {
+        this(
+                order,
+                root.isProduct() ? null : new StrexAutomaton(root, order == StrexOrder.SHORTLEX),
+                root.isProduct() ? root.toSegments() : Collections.emptyList());
     }
     
-    private static String[] splitContentPart(String rawContentPart, boolean slashed) {
-        if (!slashed) {
-            return new String[] { "", rawContentPart };
-        } else if (rawContentPart.charAt(0) == '[') {
-            int lastPos = rawContentPart.length() - 1;
-            String preContent = rawContentPart.substring(0, lastPos);
-            String content = rawContentPart.substring(lastPos);
-            return new String[] { preContent, content };
+    private Strex(StrexOrder order, StrexAutomaton automaton, List<StrexSegment> segments) {
+        this.order = order;
+        this.automaton = automaton;
+        this.segments = segments;
+        this.segmentStarts = calculateStarts(this.segments);
+        int segmentCount = segments.size();
+        if (automaton != null) {
+            this.length = automaton.maxLength();
+        } else {
+            this.length = segmentCount > 0 ? segmentStarts[segmentCount - 1] + segments.get(segmentCount - 1).width() : 0;
+        }
+        this.weights = calculateWeights(this.segments);
+        if (automaton != null) {
+            this.size = automaton.size();
         } else {
-            return new String[] { "", "\\" + rawContentPart };
+            this.size = segmentCount > 0 ? weights[0].multiply(segments.get(0).size()) : BigInteger.ONE;
         }
+        this.longSize = size.bitLength() < Long.SIZE ? size.longValue() : -1L;
+        this.longWeights = longSize >= 0 ? toLongArray(weights) : null;
     }
 
-    private static String removeBoundariesFromStartAndEnd(String pattern) {
-        String startRemoved = START_PATTERN.matcher(pattern).replaceFirst("");
-        return replaceAll(END_PATTERN.matcher(startRemoved), Strex::replaceEndPattern);
+    private static int[] calculateStarts(List<StrexSegment> segments) {
+        int segmentCount = segments.size();
+        int[] result = new int[segmentCount];
+        int start = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            result[i] = start;
+            start += segments.get(i).width();
+        }
+        return result;
+    }
+    
+    private static BigInteger[] calculateWeights(List<StrexSegment> segments) {
+        int segmentCount = segments.size();
+        BigInteger[] result = new BigInteger[segmentCount];
+        BigInteger weight = BigInteger.ONE;
+        for (int i = segmentCount - 1; i >= 0; i--) {
+            result[i] = weight;
+            weight = weight.multiply(segments.get(i).size());
+        }
+        return result;
     }
     
-    // emulates java9's Matcher::replaceAll
-    private static String replaceAll(Matcher matcher, Function<MatchResult, String> replacer) {
-        StringBuffer resultBuilder = new StringBuffer();
-        while (matcher.find()) {
-            String replacement = replacer.apply(matcher.toMatchResult());
-            matcher.appendReplacement(resultBuilder, replacement);
+    private static long[] toLongArray(BigInteger[] bigIntegers) {
+        int length = bigIntegers.length;
+        long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = bigIntegers[i].longValue();
         }
-        matcher.appendTail(resultBuilder);
-        return resultBuilder.toString();
+        return result;
     }
 
-    private static String replaceEndPattern(MatchResult matchResult) {
-        String slashes = matchResult.group(1);
 
-        StringBuilder resultBuilder = new StringBuilder();
-        resultBuilder.append(slashes);
-        if (slashes.length() % 2 == 1) {
-            resultBuilder.append('$');
-        }
-        return Matcher.quoteReplacement(resultBuilder.toString());
+    /**
+     * Compiles the given regular expression pattern, and returns with a `Strex` object
+     * containing an alphabetically sorted list of all the matching strings.
+     * 
+     * <p>Patterns with variable-length quantifiers or alternations are compiled to a deterministic automaton.
+     * Its size is usually proportional to the length of the pattern with its bounded quantifiers unrolled,
+     * but in the worst case it is exponential.
+     * For example, `[ab]{0,16}a[ab]{16}` needs a state for each possible sequence of the last 17 characters.
+     * Compilation fails if the automaton would have more than 131072 states.</p>
+     * 
+     * @param pattern the regular expression used as a template
+     * @return the `Strex` object containing the matching strings
+     * @throws IllegalArgumentException if the pattern is too complex
+     */
+    public static Strex compile(String pattern) {
+        return new Strex(StrexParser.parse(pattern), StrexOrder.LEXICOGRAPHIC);
+    }
+
+    /**
+     * Compiles the given regular expression pattern, and returns with a `Strex` object
+     * containing a list of all the matching strings, sorted in the given order.
+     * 
+     * <p>The order matters only if the matching strings have different lengths.
+     * In {@link StrexOrder#SHORTLEX} order, prefix ranges are not supported for such patterns.</p>
+     * 
+     * <p>The limits of the compilation are the same as for {@link #compile(String)}.</p>
+     * 
+     * @param pattern the regular expression used as a template
+     * @param order the order of the strings
+     * @return the `Strex` object containing the matching strings
+     * @throws IllegalArgumentException if the pattern is too complex
+     */
+    public static Strex compile(String pattern, StrexOrder order) {
+        return new Strex(StrexParser.parse(pattern), order);
     }
 
-    private static List<char[]> parse(String preprocessedPattern) {
-        Matcher matcher = ATOM_PATTERN.matcher(preprocessedPattern);
-        if (!matcher.replaceAll("").isEmpty()) {
-            throw new IllegalArgumentException("Invalid pattern");
+    /**
+     * Creates a `Strex` object containing the union of the given collections.
+     * 
+     * <p>The result is a single sorted list, strings contained by more than one collection occur only once.
+     * Character classes keep their own order, so each collection is a subsequence of the union.
+     * The given collections must have the same order.
+     * The union is compiled from the segments or the automata of the collections, so nothing is materialized,
+     * and the result supports the same index operations as any other `Strex` object.</p>
+     * 
+     * @param strexes the collections to unite
+     * @return the `Strex` object containing the union of the collections
+     */
+    public static Strex union(Strex... strexes) {
+        if (strexes.length == 0) {
+            throw new IllegalArgumentException("No collections given");
         }
         
-        List<char[]> result = new ArrayList<>();
-        matcher.reset();
-        while (matcher.find()) {
-            String nonEscapedContent = matcher.group(1);
-            String escapedContent = matcher.group(2);
-            String setContent = matcher.group(4);
-            if (setContent != null) {
-                boolean negated = matcher.group(3) != null;
-                result.add(parseSet(setContent, negated));
-            } else {
-                boolean escaped = escapedContent != null;
-                String content = escaped ? escapedContent : nonEscapedContent;
-                result.add(parseItem(content.charAt(0), escaped));
+        StrexOrder order = strexes[0].order;
+        List<StrexNode> alternatives = new ArrayList<>(strexes.length);
+        List<StrexAutomaton> automata = new ArrayList<>(strexes.length);
+        for (Strex strex : strexes) {
+            if (strex.order != order) {
+                throw new IllegalArgumentException("Collections must have the same order");
             }
-        }
-        return result;
-    }
-    
-    private static char[] parseSet(String setContent, boolean negated) {
-        int length = setContent.length();
-        Matcher matcher = SET_ITEM_PATTERN.matcher(setContent);
-        List<char[]> unionMembers = new ArrayList<>();
-        char[] previousItem = null;
-        boolean inRange = false;
-        boolean atStart = true;
-        while (matcher.find()) {
-            String nonEscapedContent = matcher.group(1);
-            if (nonEscapedContent != null && nonEscapedContent.equals("-")) {
-                if (atStart) {
-                    previousItem = new char[] { '-' };
-                } else if (matcher.end() == length && !inRange) {
-                    if (previousItem != null) {
-                        unionMembers.add(previousItem);
-                    }
-                    previousItem = new char[] { '-' };
-                } else if (previousItem == null || previousItem.length != 1 || inRange) {
-                    throw new IllegalArgumentException("Illegal range definition in character class");
-                } else {
-                    inRange = true;
-                }
+            
+            if (strex.automaton != null) {
+                automata.add(strex.automaton);
             } else {
-                String escapedContent = matcher.group(2);
-                boolean escaped = escapedContent != null;
-                String content = escaped ? escapedContent : nonEscapedContent;
-                char contentChar = content.charAt(0);
-                char[] chars = parseItem(contentChar, escaped);
-                if (inRange) {
-                    if (chars.length != 1) {
-                        throw new IllegalArgumentException("Illegal range definition in character class");
-                    } else {
-                        unionMembers.add(createCharRange(previousItem[0], chars[0]));
-                        previousItem = null;
-                        inRange = false;
-                    }
-                } else {
-                    if (previousItem != null) {
-                        unionMembers.add(previousItem);
-                    }
-                    previousItem = chars;
-                }
+                alternatives.add(StrexNode.fromSegments(strex.segments));
             }
-            atStart = false;
         }
-        if (previousItem != null) {
-            unionMembers.add(previousItem);
+        if (strexes.length == 1) {
+            return strexes[0];
         }
         
-        char[] positiveContent = createSortedUnion(unionMembers);
-        
-        return negated ? negate(positiveContent) : positiveContent;
-    }
-
-    private static char[] parseItem(char c, boolean escaped) {
-        if (escaped) {
-            return parseEscaped(c);
-        } else {
-            return parseNonEscaped(c);
-        }
-    }
-    
-    private static char[] parseNonEscaped(char c) {
-        if ("?+*()".contains(Character.toString(c))) {
-            throw new IllegalArgumentException("Unsupported construct: " + c);
-        } else if (c == '.') {
-            return new char[] {
-                    ' ', '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
-                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
-                    '[', '\\', ']', '^', '_', '`', '{', '|', '}', '~', '$',
-                    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
-                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
-                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
-                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
-                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
-                    'y', 'Y', 'z', 'Z',
-            };
-        } else {
-            return new char[] { c };
-        }
-    }
-    
-    private static char[] parseEscaped(char c) {
-        if (c == 's') {
-            return new char[] { '\t', ' ' };
-        } else if (c == 'S') {
-            return new char[] {
-                    '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
-                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
-                    '[', '\\', ']', '^', '_', '`', '{', '|', '}', '~', '$',
-                    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
-                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
-                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
-                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
-                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
-                    'y', 'Y', 'z', 'Z',
-            };
-        } else if (c == 'w') {
-            return new char[] {
-                    '_',
-                    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
-                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
-                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
-                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
-                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
-                    'y', 'Y', 'z', 'Z',
-            };
-        } else if (c == 'W') {
-            return new char[] {
-                    ' ', '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
-                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
-                    '[', '\\', ']', '^', '`', '{', '|', '}', '~', '$',
-            };
-        } else if (c == 'd') {
-            return new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
-        } else if (c == 'D') {
-            return new char[] {
-                    ' ', '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
-                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
-                    '[', '\\', ']', '^', '_', '`', '{', '|', '}', '~', '$',
-                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
-                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
-                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
-                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
-                    'y', 'Y', 'z', 'Z',
-            };
-        } else if (c == 't') {
-            return new char[] { '\t' };
-        } else if (c == 'n') {
-            return new char[] { '\n' };
-        } else if (c == 'r') {
-            return new char[] { '\r' };
-        } else {
-            return new char[] { c };
-        }
-    }
-    
-    private static char[] createCharRange(char begin, char end) {
-        if (end < begin) {
-            throw new IllegalArgumentException("Illegal character range (end is greater)");
+        StrexNode alternation = StrexNode.alternation(alternatives);
+        if (automata.isEmpty()) {
+            return new Strex(alternation, order);
         }
         
-        List<Character> resultBuilder = new ArrayList<>();
-        for (char c = begin; c <= end; c++) {
-            resultBuilder.add(c);
-        }
-        int size = resultBuilder.size();
-        char[] result = new char[size];
-        for (int i = 0; i < size; i++) {
-            result[i] = resultBuilder.get(i);
-        }
-        return result;
+        StrexAutomaton automaton = new StrexAutomaton(alternation, automata, order == StrexOrder.SHORTLEX);
+        return new Strex(order, automaton, Collections.emptyList());
     }
 
-    private static char[] createSortedUnion(List<char[]> unionMembers) {
-        Set<Character> characters = new TreeSet<>((c1, c2) -> collator.compare(Character.toString(c1), Character.toString(c2)));
-        for (char[] member : unionMembers) {
-            for (char c : member) {
-                characters.add(c);
-            }
+
+    /**
+     * Gets the length of the generated strings.
+     * 
+     * <p>All the strings in this collection have the same length,
+     * unless the pattern contains variable-length quantifiers.</p>
+     * 
+     * @return the length of the generated strings
+     * @throws UnsupportedOperationException if the generated strings have different lengths
+     */
+    public int length() {
+        if (!isFixedLength()) {
+            throw new UnsupportedOperationException("Variable-length pattern");
         }
-        return toArray(characters);
+        
+        return length;
     }
     
-    private static char[] negate(char[] positiveContent) {
-        char[] dotChars = parseNonEscaped('.');
-        List<Character> resultBuilder = new ArrayList<>(dotChars.length - positiveContent.length);
-        for (char dotChar : dotChars) {
-            boolean found = false;
-            for (char c : positiveContent) {
-                if (c == dotChar) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                resultBuilder.add(dotChar);
-            }
-        }
-        return toArray(resultBuilder);
+    /**
+     * Gets the order of the generated strings.
+     * 
+     * @return the order of this collection
+     */
+    public StrexOrder order() {
+        return order;
     }
     
-    private static char[] toArray(Collection<Character> characterCollection) {
-        int size = characterCollection.size();
-        char[] result = new char[size];
-        Iterator<Character> characterIterator = characterCollection.iterator();
-        for (int i = 0; characterIterator.hasNext(); i++) {
-            result[i] = characterIterator.next();
-        }
-        return result;
+    /**
+     * Checks whether all the generated strings have the same length.
+     * 
+     * @return `true` if all the strings have the same length, `false` otherwise
+     */
+    public boolean isFixedLength() {
+        return automaton == null || automaton.minLength() == automaton.maxLength();
     }
     
-    private static BigInteger calculateSize(List<char[]> parts) {
-        BigInteger result = BigInteger.ONE;
-        for (char[] part : parts) {
-            result = result.multiply(BigInteger.valueOf(part.length));
-        }
-        return result;
+    /**
+     * Gets the length of the shortest generated string.
+     * 
+     * @return the minimum length
+     */
+    public int minLength() {
+        return automaton != null ? automaton.minLength() : length;
     }
-
-
+    
     /**
-     * Compiles the given regular expression pattern, and returns with a `Strex` object
-     * containing an alphabetically sorted list of all the matching strings.
+     * Gets the length of the longest generated string.
      * 
-     * @param pattern the regular expression used as a template
-     * @return the `Strex` object containing the matching strings
+     * @return the maximum length
      */
-    public static Strex compile(String pattern) {
-        return new Strex(pattern);
+    public int maxLength() {
+        return length;
     }
 
-
     /**
      * Gets the size of this string collection as a `BigInteger` instance.
      * 
@@ -369,6 +265,20 @@ public class Strex implements Iterable<String> {
     public BigInteger size() {
         return size;
     }
+    
+    /**
+     * Gets the number of generated strings with the given length.
+     * 
+     * @param length the length of the strings to count
+     * @return the number of strings with the given length
+     */
+    public BigInteger sizeOfLength(int length) {
+        if (automaton != null) {
+            return automaton.size(length);
+        }
+        
+        return length == this.length ? size : BigInteger.ZERO;
+    }
 
     /**
      * Gets the nth generated string, in alphabetical order.
@@ -377,7 +287,15 @@ public class Strex implements Iterable<String> {
      * @return the nth generated string
      */
     public String get(long index) {
-        return get(BigInteger.valueOf(index));
+        if (longSize < 0) {
+            return get(BigInteger.valueOf(index));
+        }
+        
+        if (index < 0 || index >= longSize) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + index + "(size: " + size + ")");
+        }
+        
+        return getLong(index);
     }
 
     /**
@@ -391,18 +309,286 @@ public class Strex implements Iterable<String> {
             throw new ArrayIndexOutOfBoundsException("Index out of range: " + index + "(size: " + size + ")");
         }
         
-        StringBuilder resultBuilder = new StringBuilder();
-        BigInteger area = size;
+        if (longSize >= 0) {
+            return getLong(index.longValue());
+        } else if (automaton != null) {
+            return automaton.get(index);
+        }
+        
+        return new String(getChars(index));
+    }
+    
+    private char[] getChars(BigInteger index) {
+        if (automaton != null) {
+            return (longSize >= 0 ? automaton.get(index.longValue()) : automaton.get(index)).toCharArray();
+        }
+        
+        char[] result = new char[length];
+        decode(index, null, result);
+        return result;
+    }
+    
+    private String getLong(long index) {
+        if (automaton != null) {
+            return automaton.get(index);
+        }
+        
+        char[] result = new char[length];
+        decode(index, null, result);
+        return new String(result);
+    }
+    
+    /**
+     * Writes the nth generated string into the given buffer, without allocating.
+     * 
+     * <p>Exactly {@link #length()} characters will be written, starting at the given offset.</p>
+     * 
+     * @param index index of the output string as a `long` value
+     * @param dest the target buffer
+     * @param offset the position of the first written character in the target buffer
+     * @throws UnsupportedOperationException if the generated strings have different lengths
+     */
+    public void getInto(long index, char[] dest, int offset) {
+        checkIndex(index);
+        if (offset < 0 || offset > dest.length - length()) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "Offset out of range: " + offset + "(length: " + length + ", buffer size: " + dest.length + ")");
+        }
+        
+        if (longSize >= 0 && automaton == null) {
+            decode(index, null, dest, offset);
+        } else {
+            System.arraycopy(getChars(BigInteger.valueOf(index)), 0, dest, offset, length);
+        }
+    }
+    
+    /**
+     * Appends the nth generated string to the given builder, without allocating a string.
+     * 
+     * @param index index of the output string as a `long` value
+     * @param builder the builder to append to
+     * @return the same builder
+     */
+    public StringBuilder appendTo(long index, StringBuilder builder) {
+        builder.ensureCapacity(builder.length() + length);
+        try {
+            appendTo(index, (Appendable) builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder;
+    }
+    
+    /**
+     * Appends the nth generated string to the given appendable, without allocating a string.
+     * 
+     * @param <A> the type of the appendable
+     * @param index index of the output string as a `long` value
+     * @param appendable the appendable to append to
+     * @return the same appendable
+     * @throws IOException if the appendable fails
+     */
+    public <A extends Appendable> A appendTo(long index, A appendable) throws IOException {
+        checkIndex(index);
+        if (longSize < 0 || automaton != null) {
+            return appendChars(getChars(BigInteger.valueOf(index)), appendable);
+        }
+        
+        int segmentCount = segments.size();
+        for (int i = 0; i < segmentCount; i++) {
+            StrexSegment segment = segments.get(i);
+            long localIndex = (index / longWeights[i]) % segment.size().longValue();
+            int width = segment.width();
+            for (int offset = 0; offset < width; offset++) {
+                appendable.append(segment.charAt(localIndex, offset));
+            }
+        }
+        return appendable;
+    }
+    
+    private static <A extends Appendable> A appendChars(char[] chars, A appendable) throws IOException {
+        for (char c : chars) {
+            appendable.append(c);
+        }
+        return appendable;
+    }
+    
+    /**
+     * Gets the maximum number of bytes a generated string can be encoded to.
+     * 
+     * <p>Supported charsets are UTF-8, ISO-8859-1 and US-ASCII.</p>
+     * 
+     * @param charset the target charset
+     * @return the maximum encoded length in bytes
+     */
+    public int maxEncodedLength(Charset charset) {
+        if (automaton != null) {
+            return length * StrexByteEncoder.maxBytesPerChar(charset, automaton.maxChar());
+        }
+        
+        int result = 0;
+        for (StrexSegment segment : segments) {
+            result += segment.maxEncodedLength(charset);
+        }
+        return result;
+    }
+    
+    /**
+     * Encodes the nth generated string into a new byte array.
+     * 
+     * <p>Supported charsets are UTF-8, ISO-8859-1 and US-ASCII.
+     * Unmappable characters are replaced with `?`, like in {@link String#getBytes(Charset)}.</p>
+     * 
+     * @param index index of the output string as a `long` value
+     * @param charset the target charset
+     * @return the encoded bytes of the nth generated string
+     */
+    public byte[] encode(long index, Charset charset) {
+        int maxEncodedLength = maxEncodedLength(charset);
+        byte[] buffer = new byte[maxEncodedLength];
+        int encodedLength = encodeInto(index, ByteBuffer.wrap(buffer), charset);
+        return encodedLength == maxEncodedLength ? buffer : Arrays.copyOf(buffer, encodedLength);
+    }
+    
+    /**
+     * Encodes the nth generated string directly into the given buffer, without allocating a string.
+     * 
+     * <p>Supported charsets are UTF-8, ISO-8859-1 and US-ASCII.
+     * Unmappable characters are replaced with `?`, like in {@link String#getBytes(Charset)}.
+     * If there is not enough space in the buffer, a {@link BufferOverflowException} will be thrown,
+     * and the position of the buffer will be left unchanged.
+     * At most {@link #maxEncodedLength(Charset)} bytes are written.</p>
+     * 
+     * @param index index of the output string as a `long` value
+     * @param dest the target buffer
+     * @param charset the target charset
+     * @return the number of bytes written
+     */
+    public int encodeInto(long index, ByteBuffer dest, Charset charset) {
+        checkIndex(index);
+        int startPosition = dest.position();
+        StrexByteEncoder encoder = new StrexByteEncoder(dest, charset);
+        try {
+            if (longSize >= 0 && automaton == null) {
+                encodeLong(index, encoder);
+            } else {
+                for (char c : getChars(BigInteger.valueOf(index))) {
+                    encoder.put(c);
+                }
+            }
+            encoder.finish();
+        } catch (BufferOverflowException e) {
+            dest.position(startPosition);
+            throw e;
+        }
+        return dest.position() - startPosition;
+    }
+    
+    private void encodeLong(long index, StrexByteEncoder encoder) {
+        int segmentCount = segments.size();
+        for (int i = 0; i < segmentCount; i++) {
+            StrexSegment segment = segments.get(i);
+            long localIndex = (index / longWeights[i]) % segment.size().longValue();
+            int width = segment.width();
+            for (int offset = 0; offset < width; offset++) {
+                encoder.put(segment.charAt(localIndex, offset));
+            }
+        }
+    }
+    
+    /**
+     * Gets a lazy character sequence view of the nth generated string.
+     * 
+     * <p>Characters are computed one by one on access,
+     * the full string is materialized only by {@link CharSequence#toString()}.</p>
+     * 
+     * @param index index of the string as a `long` value
+     * @return the lazy view of the nth generated string
+     */
+    public CharSequence charSequenceAt(long index) {
+        if (longSize < 0) {
+            return charSequenceAt(BigInteger.valueOf(index));
+        }
+        
+        checkIndex(index);
+        if (automaton != null) {
+            return getLong(index);
+        }
+        
+        return new StrexCharSequence(this, index, null, 0, length);
+    }
+    
+    /**
+     * Gets a lazy character sequence view of the nth generated string.
+     * 
+     * <p>Characters are computed one by one on access,
+     * the full string is materialized only by {@link CharSequence#toString()}.</p>
+     * 
+     * @param index index of the string as a `BigInteger` instance
+     * @return the lazy view of the nth generated string
+     */
+    public CharSequence charSequenceAt(BigInteger index) {
+        if (index.compareTo(BigInteger.ZERO) < 0 || index.compareTo(size) >= 0) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + index + "(size: " + size + ")");
+        }
+        
+        if (longSize >= 0) {
+            return charSequenceAt(index.longValue());
+        } else if (automaton != null) {
+            return automaton.get(index);
+        } else {
+            return new StrexCharSequence(this, 0L, index, 0, length);
+        }
+    }
+    
+    char charAt(long index, int position) {
+        int segmentIndex = segmentIndexAt(position);
+        StrexSegment segment = segments.get(segmentIndex);
+        long localIndex = (index / longWeights[segmentIndex]) % segment.size().longValue();
+        return segment.charAt(localIndex, position - segmentStarts[segmentIndex]);
+    }
+    
+    char charAt(BigInteger index, int position) {
+        int segmentIndex = segmentIndexAt(position);
+        StrexSegment segment = segments.get(segmentIndex);
+        BigInteger localIndex = index.divide(weights[segmentIndex]).mod(segment.size());
+        return segment.charAt(localIndex, position - segmentStarts[segmentIndex]);
+    }
+    
+    private void checkIndex(long index) {
+        if (index < 0 || (longSize >= 0 && index >= longSize)) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + index + "(size: " + size + ")");
+        }
+    }
+    
+    
+    private void decode(BigInteger index, int[] digits, char[] chars) {
+        if (longSize >= 0) {
+            decode(index.longValue(), digits, chars);
+            return;
+        }
+        
+        int segmentCount = segments.size();
         BigInteger position = index;
-        for (char[] part : parts) {
-            int count = part.length;
-            area = area.divide(BigInteger.valueOf(count));
-            BigInteger charIndex = position.divide(area);
-            position = position.subtract(charIndex.multiply(area));
-            char c = part[charIndex.intValue()];
-            resultBuilder.append(c);
+        for (int i = 0; i < segmentCount; i++) {
+            BigInteger[] localIndexAndRemainder = position.divideAndRemainder(weights[i]);
+            segments.get(i).decode(localIndexAndRemainder[0], digits, chars, segmentStarts[i]);
+            position = localIndexAndRemainder[1];
+        }
+    }
+    
+    private void decode(long index, int[] digits, char[] chars) {
+        decode(index, digits, chars, 0);
+    }
+    
+    private void decode(long index, int[] digits, char[] chars, int offset) {
+        int segmentCount = segments.size();
+        long position = index;
+        for (int i = 0; i < segmentCount; i++) {
+            long weight = longWeights[i];
+            segments.get(i).decode(position / weight, digits, chars, offset + segmentStarts[i]);
+            position %= weight;
         }
-        return resultBuilder.toString();
     }
 
     /**
@@ -413,72 +599,908 @@ public class Strex implements Iterable<String> {
      * @return alphabetical index of the text or a negative number
      */
     public BigInteger indexOf(String text) {
-        int patternLength = parts.size();
+        if (longSize >= 0) {
+            return BigInteger.valueOf(indexOfLong(text));
+        } else if (automaton != null) {
+            return automaton.indexOf(text);
+        }
+        
+        int patternLength = length;
         int textLength = text.length();
-        int length = textLength < patternLength ? textLength : patternLength;
+        int commonLength = textLength < patternLength ? textLength : patternLength;
         
-        BigInteger floor = BigInteger.ZERO;
-        BigInteger space = size;
-        for (int i = 0; i < length; i++) {
-            char[] part = parts.get(i);
-            int chunkCount = part.length;
-            BigInteger chunkSize = space.divide(BigInteger.valueOf(chunkCount));
-            char c = text.charAt(i);
-            
-            int posResult = findCharInPart(part, c);
-            boolean found = posResult >= 0;
-            int pos = posResult >= 0 ? posResult : 0 - posResult - 1;
-
-            floor = floor.add(chunkSize.multiply(BigInteger.valueOf(pos)));
-            space = chunkSize;
-            
-            if (!found) {
-                return floor.negate().subtract(BigInteger.ONE);
-            } else if (i == length - 1) {
-                if (textLength == patternLength) {
-                    return floor;
-                } else if (textLength < patternLength) {
-                    return floor.negate().subtract(BigInteger.ONE);
-                } else {
-                    return floor.negate().subtract(BigInteger.valueOf(2L));
-                }
-            }
+        int[] digits = new int[commonLength];
+        int matchLength = matchDigits(text, digits);
+        if (matchLength < commonLength) {
+            return indexOfDigits(digits, matchLength + 1).negate().subtract(BigInteger.ONE);
         }
         
-        return size.negate().subtract(BigInteger.ONE);
+        BigInteger floor = indexOfDigits(digits, commonLength);
+        if (textLength == patternLength) {
+            return floor;
+        } else if (textLength < patternLength) {
+            return floor.negate().subtract(BigInteger.ONE);
+        } else {
+            return floor.negate().subtract(BigInteger.valueOf(2L));
+        }
     }
     
-    private int findCharInPart(char[] part, char c) {
-        String cAsString = Character.toString(c);
-        for (int i = 0; i < part.length; i++) {
-            char partC = part[i];
-            if (partC == c) {
-                return i;
-            } else if (collator.compare(Character.toString(partC), cAsString) > 0) {
-                return 0 - i - 1;
+    long indexOfLong(String text) {
+        if (automaton != null) {
+            return automaton.indexOfLong(text);
+        }
+        
+        int patternLength = length;
+        int textLength = text.length();
+        int commonLength = textLength < patternLength ? textLength : patternLength;
+        
+        long floor = 0L;
+        int segmentCount = segments.size();
+        for (int i = 0; i < segmentCount; i++) {
+            StrexSegment segment = segments.get(i);
+            int start = segmentStarts[i];
+            int end = Math.min(start + segment.width(), commonLength);
+            for (int position = start; position < end; position++) {
+                int posResult = segment.partAt(position - start).indexOf(text.charAt(position));
+                boolean found = posResult >= 0;
+                int pos = posResult >= 0 ? posResult : 0 - posResult - 1;
+                
+                if (pos > 0) {
+                    floor += longWeights[i] * segment.longPositionWeight(position - start) * pos;
+                }
+                
+                if (!found) {
+                    return 0L - floor - 1L;
+                }
             }
         }
-        return 0 - part.length - 1;
+        
+        if (textLength == patternLength) {
+            return floor;
+        } else if (textLength < patternLength) {
+            return 0L - floor - 1L;
+        } else {
+            return 0L - floor - 2L;
+        }
     }
-
+    
     /**
-     * Creates an iterator that iterates through the matching strings in alphabetical order.
+     * Finds the index of the least string greater than or equal to the given text.
      * 
-     * @return the string iterator
+     * @param text the text to compare to
+     * @return the index of the least matching string, or `null` if there is no such string
      */
-    @Override
-    public Iterator<String> iterator() {
-        return new StrexIterator();
+    public BigInteger ceilingIndex(String text) {
+        BigInteger index = ceilingBound(text);
+        return index.compareTo(size) < 0 ? index : null;
     }
-    
-    
-    private class StrexIterator implements Iterator<String> {
-        
-        BigInteger position = BigInteger.ZERO;
 
-        @Override
+    /**
+     * Finds the index of the greatest string less than or equal to the given text.
+     * 
+     * @param text the text to compare to
+     * @return the index of the greatest matching string, or `null` if there is no such string
+     */
+    public BigInteger floorIndex(String text) {
+        BigInteger index = higherBound(text).subtract(BigInteger.ONE);
+        return index.signum() >= 0 ? index : null;
+    }
+
+    /**
+     * Finds the index of the least string strictly greater than the given text.
+     * 
+     * @param text the text to compare to
+     * @return the index of the least matching string, or `null` if there is no such string
+     */
+    public BigInteger higherIndex(String text) {
+        BigInteger index = higherBound(text);
+        return index.compareTo(size) < 0 ? index : null;
+    }
+
+    /**
+     * Finds the index of the greatest string strictly less than the given text.
+     * 
+     * @param text the text to compare to
+     * @return the index of the greatest matching string, or `null` if there is no such string
+     */
+    public BigInteger lowerIndex(String text) {
+        BigInteger index = ceilingBound(text).subtract(BigInteger.ONE);
+        return index.signum() >= 0 ? index : null;
+    }
+
+    /**
+     * Finds the index range of the strings between the given bounds.
+     * 
+     * <p>If there is no such string, the returned range will be empty.</p>
+     * 
+     * @param low the lower bound
+     * @param lowInclusive `true` if strings equal to the lower bound are included
+     * @param high the upper bound
+     * @param highInclusive `true` if strings equal to the upper bound are included
+     * @return the range of the strings between the bounds
+     */
+    public StrexRange rangeBetween(String low, boolean lowInclusive, String high, boolean highInclusive) {
+        BigInteger from = lowInclusive ? ceilingBound(low) : higherBound(low);
+        BigInteger to = highInclusive ? higherBound(high) : ceilingBound(high);
+        return new StrexRange(this, from, to.max(from));
+    }
+    
+    private BigInteger ceilingBound(String text) {
+        BigInteger indexResult = indexOf(text);
+        return indexResult.signum() >= 0 ? indexResult : indexResult.negate().subtract(BigInteger.ONE);
+    }
+    
+    private BigInteger higherBound(String text) {
+        BigInteger indexResult = indexOf(text);
+        if (indexResult.signum() >= 0) {
+            return indexResult.add(BigInteger.ONE);
+        } else {
+            return indexResult.negate().subtract(BigInteger.ONE);
+        }
+    }
+    
+    /**
+     * Finds the index range of the strings starting with the given prefix.
+     * 
+     * <p>If there is no such string, the returned range will be empty,
+     * and positioned at the insertion point of the prefix.</p>
+     * 
+     * @param prefix the prefix to search for
+     * @return the range of the strings starting with the prefix
+     * @throws UnsupportedOperationException if the order is shortlex and the strings have different lengths
+     */
+    public StrexRange prefixRange(String prefix) {
+        if (automaton != null) {
+            BigInteger[] fromAndTo = automaton.prefixRange(prefix);
+            return new StrexRange(this, fromAndTo[0], fromAndTo[1]);
+        }
+        
+        int patternLength = length;
+        int prefixLength = prefix.length();
+        int commonLength = prefixLength < patternLength ? prefixLength : patternLength;
+        
+        int[] digits = new int[commonLength];
+        int matchLength = matchDigits(prefix, digits);
+        if (matchLength < commonLength) {
+            BigInteger insertionPoint = indexOfDigits(digits, matchLength + 1);
+            return new StrexRange(this, insertionPoint, insertionPoint);
+        }
+        
+        BigInteger floor = indexOfDigits(digits, commonLength);
+        if (prefixLength > patternLength) {
+            BigInteger insertionPoint = floor.add(BigInteger.ONE);
+            return new StrexRange(this, insertionPoint, insertionPoint);
+        }
+        
+        BigInteger count = commonLength == 0 ? size : weightAt(commonLength - 1);
+        return new StrexRange(this, floor, floor.add(count));
+    }
+    
+    private int matchDigits(String text, int[] digits) {
+        int commonLength = digits.length;
+        int segmentCount = segments.size();
+        for (int i = 0; i < segmentCount; i++) {
+            StrexSegment segment = segments.get(i);
+            int start = segmentStarts[i];
+            int end = Math.min(start + segment.width(), commonLength);
+            for (int position = start; position < end; position++) {
+                int posResult = segment.partAt(position - start).indexOf(text.charAt(position));
+                if (posResult < 0) {
+                    digits[position] = 0 - posResult - 1;
+                    return position;
+                }
+                digits[position] = posResult;
+            }
+        }
+        return commonLength;
+    }
+    
+    private BigInteger indexOfDigits(int[] digits, int digitCount) {
+        int segmentCount = segments.size();
+        if (longWeights != null) {
+            long result = 0L;
+            for (int i = 0; i < segmentCount; i++) {
+                StrexSegment segment = segments.get(i);
+                int start = segmentStarts[i];
+                int end = Math.min(start + segment.width(), digitCount);
+                for (int position = start; position < end; position++) {
+                    int digit = digits[position];
+                    if (digit > 0) {
+                        result += longWeights[i] * segment.longPositionWeight(position - start) * digit;
+                    }
+                }
+            }
+            return BigInteger.valueOf(result);
+        }
+        
+        BigInteger result = BigInteger.ZERO;
+        for (int i = 0; i < segmentCount && segmentStarts[i] < digitCount; i++) {
+            StrexSegment segment = segments.get(i);
+            int start = segmentStarts[i];
+            int count = Math.min(segment.width(), digitCount - start);
+            BigInteger localIndex = segment.encode(digits, start, count);
+            if (localIndex.signum() > 0) {
+                result = result.add(localIndex.multiply(weights[i]));
+            }
+        }
+        return result;
+    }
+    
+    private BigInteger weightAt(int position) {
+        int segmentIndex = segmentIndexAt(position);
+        StrexSegment segment = segments.get(segmentIndex);
+        return weights[segmentIndex].multiply(segment.positionWeight(position - segmentStarts[segmentIndex]));
+    }
+    
+    private StrexPart partAt(int position) {
+        int segmentIndex = segmentIndexAt(position);
+        return segments.get(segmentIndex).partAt(position - segmentStarts[segmentIndex]);
+    }
+    
+    private int segmentIndexAt(int position) {
+        int searchResult = Arrays.binarySearch(segmentStarts, position);
+        if (searchResult < 0) {
+            return 0 - searchResult - 2;
+        }
+        
+        int segmentIndex = searchResult;
+        while (segments.get(segmentIndex).width() == 0) {
+            segmentIndex++;
+        }
+        return segmentIndex;
+    }
+    
+    private int compareTexts(String text1, String text2) {
+        if (automaton != null) {
+            return automaton.compare(text1, text2);
+        }
+        
+        int length1 = text1.length();
+        int length2 = text2.length();
+        int commonLength = Math.min(Math.min(length1, length2), length);
+        for (int i = 0; i < commonLength; i++) {
+            char c1 = text1.charAt(i);
+            char c2 = text2.charAt(i);
+            if (c1 != c2) {
+                StrexPart part = partAt(i);
+                int rank1 = rankInPart(part, c1);
+                int rank2 = rankInPart(part, c2);
+                return rank1 != rank2 ? Integer.compare(rank1, rank2) : Character.compare(c1, c2);
+            }
+        }
+        return length1 == length2 ? text1.compareTo(text2) : Integer.compare(length1, length2);
+    }
+    
+    private int rankInPart(StrexPart part, char c) {
+        int posResult = part.indexOf(c);
+        return posResult >= 0 ? (posResult * 2) + 1 : (0 - posResult - 1) * 2;
+    }
+
+    /**
+     * Creates the intersection of this collection and the other one.
+     * 
+     * <p>Both collections must be simple products of character sets (fixed-length patterns without alternation),
+     * so the intersection is computed per position in time proportional to the length and the set sizes.
+     * If the lengths are different, the intersection is empty.</p>
+     * 
+     * @param other the other collection
+     * @return the intersection with index mapping to both collections
+     * @throws UnsupportedOperationException if any of the collections is not a simple product
+     */
+    public StrexIntersection intersect(Strex other) {
+        List<StrexNode> children = intersectionChildren(other);
+        StrexNode intersectionRoot;
+        if (children != null) {
+            intersectionRoot = StrexNode.sequence(children);
+        } else {
+            intersectionRoot = StrexNode.alternation(Collections.emptyList());
+        }
+        return new StrexIntersection(this, other, new Strex(intersectionRoot, order));
+    }
+    
+    /**
+     * Calculates the number of strings contained by both this collection and the other one,
+     * without creating the intersection.
+     * 
+     * @param other the other collection
+     * @return the size of the intersection
+     * @throws UnsupportedOperationException if any of the collections is not a simple product
+     * @see #intersect(Strex)
+     */
+    public BigInteger overlapSize(Strex other) {
+        List<StrexNode> children = intersectionChildren(other);
+        if (children == null) {
+            return BigInteger.ZERO;
+        }
+        
+        BigInteger result = BigInteger.ONE;
+        for (StrexNode child : children) {
+            result = result.multiply(BigInteger.valueOf(child.part().size()).pow(child.minRepeat()));
+        }
+        return result;
+    }
+    
+    private List<StrexNode> intersectionChildren(Strex other) {
+        if (automaton != null || other.automaton != null) {
+            throw new UnsupportedOperationException("Intersection is supported only for simple products");
+        } else if (length != other.length) {
+            return null;
+        }
+        
+        List<StrexNode> result = new ArrayList<>();
+        int segmentIndex = 0;
+        int otherSegmentIndex = 0;
+        int position = 0;
+        while (position < length) {
+            StrexSegment segment = segments.get(segmentIndex);
+            StrexSegment otherSegment = other.segments.get(otherSegmentIndex);
+            int start = segmentStarts[segmentIndex];
+            int otherStart = other.segmentStarts[otherSegmentIndex];
+            if (start + segment.width() <= position) {
+                segmentIndex++;
+            } else if (otherStart + otherSegment.width() <= position) {
+                otherSegmentIndex++;
+            } else {
+                int end = start + segment.runEnd(position - start);
+                int otherEnd = otherStart + otherSegment.runEnd(position - otherStart);
+                int commonEnd = Math.min(end, otherEnd);
+                StrexPart part = segment.partAt(position - start);
+                char[] chars = part.intersection(otherSegment.partAt(position - otherStart));
+                result.add(StrexNode.chars(new StrexPart(chars), commonEnd - position, commonEnd - position));
+                position = commonEnd;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an iterator that iterates through the matching strings in alphabetical order.
+     * 
+     * @return the string iterator
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return createIterator(BigInteger.ZERO, size);
+    }
+
+    /**
+     * Creates an iterator that iterates through the matching strings in alphabetical order,
+     * starting from the given index.
+     * 
+     * @param from the index of the first string to iterate
+     * @return the string iterator
+     */
+    public Iterator<String> iterator(BigInteger from) {
+        return iterator(from, size);
+    }
+
+    /**
+     * Creates an iterator that iterates through the matching strings in alphabetical order,
+     * in the given index range.
+     * 
+     * @param from the index of the first string to iterate (inclusive)
+     * @param to the end of the range (exclusive)
+     * @return the string iterator
+     */
+    public Iterator<String> iterator(BigInteger from, BigInteger to) {
+        checkRange(from, to);
+        return createIterator(from, to);
+    }
+    
+    private Iterator<String> createIterator(BigInteger from, BigInteger to) {
+        return automaton != null ? automaton.iterator(from, to) : new StrexIterator(from, to);
+    }
+
+    /**
+     * Gets a seeded, invertible pseudo-random permutation of this collection.
+     * 
+     * <p>Different seeds give independent-looking permutations,
+     * the same seed always gives the same one.</p>
+     * 
+     * @param seed the seed of the permutation
+     * @return the permutation of this collection
+     */
+    public StrexPermutation permutation(long seed) {
+        return new StrexPermutation(this, seed);
+    }
+
+    /**
+     * Gets a lazy view of the given index range of this collection.
+     * 
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @return the view of the range
+     */
+    public StrexRange range(BigInteger from, BigInteger to) {
+        checkRange(from, to);
+        return new StrexRange(this, from, to);
+    }
+    
+    /**
+     * Creates a spliterator over the matching strings in alphabetical order.
+     * 
+     * <p>The spliterator splits the index range in half in constant time,
+     * and traverses incrementally after splitting.</p>
+     * 
+     * @return the string spliterator
+     */
+    @Override
+    public Spliterator<String> spliterator() {
+        return new StrexSpliterator(BigInteger.ZERO, size);
+    }
+    
+    Spliterator<String> spliterator(BigInteger from, BigInteger to) {
+        return new StrexSpliterator(from, to);
+    }
+
+    /**
+     * Writes the encoded strings of the given index range to the given channel.
+     * 
+     * <p>The strings are decoded incrementally, encoded directly into a large direct buffer,
+     * and written in blocks, with the given separator between them.
+     * Supported charsets are UTF-8, ISO-8859-1 and US-ASCII.</p>
+     * 
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param out the target channel
+     * @param charset the target charset
+     * @param separator the bytes to write between the strings
+     * @return the number of bytes written
+     * @throws IOException if the channel fails
+     */
+    public long writeRange(
+            BigInteger from, BigInteger to, WritableByteChannel out, Charset charset, byte[] separator)
+            throws IOException {
+        checkRange(from, to);
+        return writeElements(from, to, out, charset, separator, false);
+    }
+
+    /**
+     * Writes the encoded strings of the given index range to the given file channel,
+     * starting at the given file position, using multiple threads.
+     * 
+     * <p>If every string has the same encoded length
+     * (all the characters are single-byte in the given charset),
+     * the range is split into disjoint chunks written in parallel at computed offsets.
+     * Otherwise the range is written sequentially.
+     * The position of the channel is not used and not changed.</p>
+     * 
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param out the target file channel
+     * @param position the file position of the first written byte
+     * @param charset the target charset
+     * @param separator the bytes to write between the strings
+     * @return the number of bytes written
+     * @throws IOException if the channel fails
+     */
+    public long writeRangeParallel(
+            BigInteger from, BigInteger to, FileChannel out, long position, Charset charset, byte[] separator)
+            throws IOException {
+        checkRange(from, to);
+        BigInteger count = to.subtract(from);
+        int chunkCount = count.min(BigInteger.valueOf(Runtime.getRuntime().availableProcessors() * 4L)).intValue();
+        if (!isFixedLength() || maxEncodedLength(charset) != length || chunkCount < 2) {
+            return writeElements(from, to, new PositionedChannel(out, position), charset, separator, false);
+        }
+        
+        BigInteger elementLength = BigInteger.valueOf((long) length + separator.length);
+        BigInteger chunkCountValue = BigInteger.valueOf(chunkCount);
+        try {
+            return IntStream.range(0, chunkCount).parallel().mapToLong(chunk -> {
+                BigInteger chunkFrom = from.add(count.multiply(BigInteger.valueOf(chunk)).divide(chunkCountValue));
+                BigInteger chunkTo = from.add(count.multiply(BigInteger.valueOf(chunk + 1L)).divide(chunkCountValue));
+                long chunkPosition = position + chunkFrom.subtract(from).multiply(elementLength).longValue();
+                boolean separatorFirst = chunk > 0;
+                if (separatorFirst) {
+                    chunkPosition -= separator.length;
+                }
+                WritableByteChannel chunkChannel = new PositionedChannel(out, chunkPosition);
+                try {
+                    return writeElements(chunkFrom, chunkTo, chunkChannel, charset, separator, separatorFirst);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private long writeElements(
+            BigInteger from, BigInteger to, WritableByteChannel out, Charset charset,
+            byte[] separator, boolean separatorFirst) throws IOException {
+        int elementCapacity = maxEncodedLength(charset) + separator.length;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_SIZE, elementCapacity));
+        StrexByteEncoder encoder = new StrexByteEncoder(buffer, charset);
+        Iterator<String> iterator = createIterator(from, to);
+        long written = 0L;
+        boolean first = !separatorFirst;
+        while (iterator.hasNext()) {
+            if (buffer.remaining() < elementCapacity) {
+                written += flush(buffer, out);
+            }
+            if (!first) {
+                buffer.put(separator);
+            }
+            if (iterator instanceof StrexIterator) {
+                ((StrexIterator) iterator).encodeNext(encoder);
+            } else {
+                encodeString(iterator.next(), encoder);
+            }
+            first = false;
+        }
+        written += flush(buffer, out);
+        return written;
+    }
+    
+    private static void encodeString(String string, StrexByteEncoder encoder) {
+        int stringLength = string.length();
+        for (int i = 0; i < stringLength; i++) {
+            encoder.put(string.charAt(i));
+        }
+        encoder.finish();
+    }
+    
+    private static long flush(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Creates a sequential stream of the matching strings in alphabetical order.
+     * 
+     * @return the stream of strings
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Creates a possibly parallel stream of the matching strings in alphabetical order.
+     * 
+     * @return the stream of strings
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+    
+    /**
+     * Gets a uniformly distributed random string of this collection.
+     * 
+     * <p>The characters are drawn position by position, without any index arithmetic.</p>
+     * 
+     * @param random the source of randomness
+     * @return the random string
+     */
+    public String random(Random random) {
+        return random(random::nextLong);
+    }
+    
+    /**
+     * Gets a uniformly distributed random string of this collection.
+     * 
+     * <p>The characters are drawn position by position, without any index arithmetic.</p>
+     * 
+     * @param random the source of randomness
+     * @return the random string
+     */
+    public String random(SplittableRandom random) {
+        return random(random::nextLong);
+    }
+    
+    private String random(LongSupplier source) {
+        if (size.signum() == 0) {
+            throw new NoSuchElementException("Empty collection");
+        } else if (automaton != null && longSize >= 0) {
+            return automaton.get(StrexRandom.nextLong(source, longSize));
+        } else if (automaton != null) {
+            return automaton.get(StrexRandom.nextBigInteger(source, size));
+        }
+        
+        char[] result = new char[length];
+        int segmentCount = segments.size();
+        for (int i = 0; i < segmentCount; i++) {
+            StrexSegment segment = segments.get(i);
+            int start = segmentStarts[i];
+            int end = start + segment.width();
+            for (int position = start; position < end; position++) {
+                StrexPart part = segment.partAt(position - start);
+                result[position] = part.charAt((int) StrexRandom.nextLong(source, part.size()));
+            }
+        }
+        return new String(result);
+    }
+    
+    /**
+     * Selects the given number of distinct random strings, and returns them in alphabetical order.
+     * 
+     * <p>Each subset of the given size has the same probability.</p>
+     * 
+     * @param count the number of strings to select
+     * @param random the source of randomness
+     * @return the sorted list of the selected strings
+     */
+    public List<String> sample(int count, Random random) {
+        return sample(count, random::nextLong);
+    }
+    
+    /**
+     * Selects the given number of distinct random strings, and returns them in alphabetical order.
+     * 
+     * <p>Each subset of the given size has the same probability.</p>
+     * 
+     * @param count the number of strings to select
+     * @param random the source of randomness
+     * @return the sorted list of the selected strings
+     */
+    public List<String> sample(int count, SplittableRandom random) {
+        return sample(count, random::nextLong);
+    }
+    
+    private List<String> sample(int count, LongSupplier source) {
+        List<String> result = new ArrayList<>(count);
+        if (longSize >= 0) {
+            for (long index : sampleLongIndices(count, source)) {
+                result.add(getLong(index));
+            }
+        } else {
+            for (BigInteger index : sampleIndices(count, source)) {
+                result.add(get(index));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Selects the given number of distinct random indices, and returns them in ascending order.
+     * 
+     * <p>Each subset of the given size has the same probability.</p>
+     * 
+     * @param count the number of indices to select
+     * @param random the source of randomness
+     * @return the sorted list of the selected indices
+     */
+    public List<BigInteger> sampleIndices(int count, Random random) {
+        return sampleIndices(count, random::nextLong);
+    }
+    
+    /**
+     * Selects the given number of distinct random indices, and returns them in ascending order.
+     * 
+     * <p>Each subset of the given size has the same probability.</p>
+     * 
+     * @param count the number of indices to select
+     * @param random the source of randomness
+     * @return the sorted list of the selected indices
+     */
+    public List<BigInteger> sampleIndices(int count, SplittableRandom random) {
+        return sampleIndices(count, random::nextLong);
+    }
+    
+    private List<BigInteger> sampleIndices(int count, LongSupplier source) {
+        if (longSize >= 0) {
+            List<BigInteger> result = new ArrayList<>(count);
+            for (long index : sampleLongIndices(count, source)) {
+                result.add(BigInteger.valueOf(index));
+            }
+            return result;
+        }
+        
+        checkSampleCount(count);
+        Set<BigInteger> selected = new HashSet<>();
+        for (BigInteger bound = size.subtract(BigInteger.valueOf(count)); bound.compareTo(size) < 0; ) {
+            BigInteger candidate = StrexRandom.nextBigInteger(source, bound.add(BigInteger.ONE));
+            selected.add(selected.contains(candidate) ? bound : candidate);
+            bound = bound.add(BigInteger.ONE);
+        }
+        List<BigInteger> result = new ArrayList<>(selected);
+        Collections.sort(result);
+        return result;
+    }
+    
+    private long[] sampleLongIndices(int count, LongSupplier source) {
+        checkSampleCount(count);
+        Set<Long> selected = new HashSet<>();
+        for (long bound = longSize - count; bound < longSize; bound++) {
+            long candidate = StrexRandom.nextLong(source, bound + 1);
+            selected.add(selected.contains(candidate) ? bound : candidate);
+        }
+        long[] result = new long[count];
+        int i = 0;
+        for (long index : selected) {
+            result[i] = index;
+            i++;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+    
+    private void checkSampleCount(int count) {
+        if (count < 0 || BigInteger.valueOf(count).compareTo(size) > 0) {
+            throw new IllegalArgumentException("Invalid sample size: " + count + " (size: " + size + ")");
+        }
+    }
+    
+    private void checkRange(BigInteger from, BigInteger to) {
+        if (from.compareTo(to) > 0) {
+            throw new IllegalArgumentException("Invalid range: " + from + " > " + to);
+        } else if (from.compareTo(BigInteger.ZERO) < 0 || to.compareTo(size) > 0) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "Range out of bounds: [" + from + ", " + to + ") (size: " + size + ")");
+        }
+    }
+    
+    
+    private class StrexSpliterator implements Spliterator<String> {
+        
+        private static final int SIZED_CHARACTERISTICS =
+                ORDERED | SORTED | DISTINCT | IMMUTABLE | NONNULL | SIZED | SUBSIZED;
+        
+        private static final int UNSIZED_CHARACTERISTICS =
+                ORDERED | SORTED | DISTINCT | IMMUTABLE | NONNULL;
+        
+        
+        private BigInteger from;
+        
+        private final BigInteger to;
+        
+        private Iterator<String> iterator = null;
+        
+        private long traversalSize = 0L;
+        
+        
+        private StrexSpliterator(BigInteger from, BigInteger to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            Iterator<String> currentIterator = startTraversal();
+            if (!currentIterator.hasNext()) {
+                return false;
+            }
+            
+            action.accept(currentIterator.next());
+            traversalSize--;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super String> action) {
+            Iterator<String> currentIterator = startTraversal();
+            while (currentIterator.hasNext()) {
+                action.accept(currentIterator.next());
+            }
+            traversalSize = 0L;
+        }
+        
+        private Iterator<String> startTraversal() {
+            if (iterator == null) {
+                traversalSize = estimateSize();
+                iterator = createIterator(from, to);
+            }
+            return iterator;
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            if (iterator != null) {
+                return null;
+            }
+            
+            BigInteger half = to.subtract(from).shiftRight(1);
+            if (half.signum() == 0) {
+                return null;
+            }
+            
+            BigInteger mid = from.add(half);
+            StrexSpliterator prefix = new StrexSpliterator(from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            if (iterator != null) {
+                return traversalSize;
+            }
+            
+            BigInteger count = to.subtract(from);
+            return count.bitLength() < Long.SIZE ? count.longValue() : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return to.subtract(from).bitLength() < Long.SIZE ? SIZED_CHARACTERISTICS : UNSIZED_CHARACTERISTICS;
+        }
+
+        @Override
+        public Comparator<? super String> getComparator() {
+            return Strex.this::compareTexts;
+        }
+        
+    }
+    
+    
+    private static class PositionedChannel implements WritableByteChannel {
+        
+        private final FileChannel fileChannel;
+        
+        private long position;
+        
+        
+        private PositionedChannel(FileChannel fileChannel, long position) {
+            this.fileChannel = fileChannel;
+            this.position = position;
+        }
+        
+        
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int written = fileChannel.write(source, position);
+            position += written;
+            return written;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return fileChannel.isOpen();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            fileChannel.close();
+        }
+        
+    }
+    
+    
+    private class StrexIterator implements Iterator<String> {
+        
+        private final int[] digits;
+        
+        private final char[] buffer;
+        
+        private final boolean[] singleValuedSegments;
+        
+        private long remaining;
+        
+        private BigInteger remainingBeyond;
+        
+        
+        private StrexIterator(BigInteger from, BigInteger to) {
+            this.digits = new int[length];
+            this.buffer = new char[length];
+            int segmentCount = segments.size();
+            this.singleValuedSegments = new boolean[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                singleValuedSegments[i] = segments.get(i).size().equals(BigInteger.ONE);
+            }
+            BigInteger count = to.subtract(from);
+            if (count.bitLength() < Long.SIZE) {
+                this.remaining = count.longValue();
+                this.remainingBeyond = BigInteger.ZERO;
+            } else {
+                this.remaining = Long.MAX_VALUE;
+                this.remainingBeyond = count.subtract(BigInteger.valueOf(Long.MAX_VALUE));
+            }
+            if (remaining > 0) {
+                decode(from, digits, buffer);
+            }
+        }
+        
+
+        @Override
         public boolean hasNext() {
-            return position.compareTo(size)  < 0;
+            return remaining > 0;
         }
 
         @Override
@@ -487,11 +1509,63 @@ public class Strex implements Iterable<String> {
                 throw new NoSuchElementException();
             }
             
-            String result = get(position);
-            position = position.add(BigInteger.ONE);
+            String result = new String(buffer);
+            advance();
             return result;
         }
         
+        private void encodeNext(StrexByteEncoder encoder) {
+            for (char c : buffer) {
+                encoder.put(c);
+            }
+            encoder.finish();
+            advance();
+        }
+        
+        private void advance() {
+            remaining--;
+            if (remaining > 0) {
+                increment();
+            } else if (remainingBeyond.signum() > 0) {
+                refill();
+                increment();
+            }
+        }
+        
+        private void refill() {
+            if (remainingBeyond.bitLength() < Long.SIZE) {
+                remaining = remainingBeyond.longValue();
+                remainingBeyond = BigInteger.ZERO;
+            } else {
+                remaining = Long.MAX_VALUE;
+                remainingBeyond = remainingBeyond.subtract(BigInteger.valueOf(Long.MAX_VALUE));
+            }
+        }
+        
+        private void increment() {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                if (singleValuedSegments[i]) {
+                    continue;
+                }
+                
+                StrexSegment segment = segments.get(i);
+                int start = segmentStarts[i];
+                for (int position = start + segment.width() - 1; position >= start; position--) {
+                    StrexPart part = segment.partAt(position - start);
+                    int radix = part.size();
+                    int digit = digits[position] + 1;
+                    if (digit < radix) {
+                        digits[position] = digit;
+                        buffer[position] = part.charAt(digit);
+                        return;
+                    }
+                    
+                    digits[position] = 0;
+                    buffer[position] = part.charAt(0);
+                }
+            }
+        }
+        
     }
 
 }
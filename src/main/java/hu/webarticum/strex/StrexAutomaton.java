@@ -0,0 +1,1326 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Minimal deterministic finite automaton accepting the strings of a pattern that is not a simple product
+ * (variable-length quantifiers or alternations).
+ * 
+ * <p>The characters are ordered consistently with each character set of the pattern,
+ * so predefined and negated classes keep their own order, like in simple products.
+ * The remaining ties are broken by collation (and then by char code),
+ * and shorter strings come before their extensions.
+ * Alternatively, in shortlex mode, strings are ordered by length first,
+ * so the index space is a concatenation of blocks of strings with the same length.
+ * The pattern is compiled to a nondeterministic automaton, then determinized via subset construction,
+ * and finally minimized by merging equivalent states bottom-up (the automaton is acyclic).
+ * The subset construction may produce exponentially many states,
+ * so it is aborted with an {@link IllegalArgumentException} above a fixed limit.
+ * Dead states are dropped, so every state except an empty initial state has at least one completion.
+ * The transitions of each state are stored as runs of consecutive positions in the character order.</p>
+ * 
+ * <p>The number of accepted completions is precomputed for each state (as `long` values if possible),
+ * so rank (`indexOf`) and unrank (`get`) are done by walking the automaton once,
+ * in time proportional to the length of the string multiplied by the number of transition runs.
+ * The number of completions of each exact length is computed only on demand,
+ * and cached per state.
+ * In shortlex mode, these are used to find the block by binary search over a cumulative-size table,
+ * and to rank and unrank inside the block.</p>
+ */
+final class StrexAutomaton {
+
+    private final StrexPart alphabet;
+    
+    private final boolean[] accepting;
+    
+    private final int[] edgeOffsets;
+    
+    private final int[] edgeFroms;
+    
+    private final int[] edgeTos;
+    
+    private final int[] edgeTargets;
+    
+    private final int[] minLengths;
+    
+    private final int[] maxLengths;
+    
+    private final BigInteger[] counts;
+    
+    private final long[] longCounts;
+    
+    private final AtomicReferenceArray<LengthCounts> lengthCounts;
+    
+    private final boolean shortlex;
+    
+    private final BigInteger[] lengthOffsets;
+    
+    private final int minLength;
+    
+    private final int maxLength;
+    
+    
+    StrexAutomaton(StrexNode node, boolean shortlex) {
+        this(node, Collections.emptyList(), shortlex);
+    }
+    
+    /**
+     * Creates the automaton accepting the strings of the given node and the strings of the given automata.
+     * 
+     * <p>The automata are embedded as they are, so their patterns are not needed.
+     * Their alphabets are merged like the character sets of the node.</p>
+     * 
+     * @param node the node to compile, must be an alternation if automata are given
+     * @param automata the automata to unite with the node
+     * @param shortlex `true` for shortlex order, `false` for lexicographic order
+     */
+    StrexAutomaton(StrexNode node, List<StrexAutomaton> automata, boolean shortlex) {
+        this.alphabet = createAlphabet(node, automata);
+        Nfa nfa = new Nfa(alphabet);
+        int nfaStart = nfa.addState();
+        int nfaEnd = nfa.build(node, nfaStart);
+        for (StrexAutomaton automaton : automata) {
+            nfa.embed(automaton, nfaStart, nfaEnd);
+        }
+        
+        Dfa dfa = new Dfa(nfa, nfaEnd).minimize();
+        int stateCount = dfa.accepting.size();
+        this.accepting = new boolean[stateCount];
+        this.edgeOffsets = new int[stateCount + 1];
+        int edgeCount = dfa.edgeFroms.size();
+        this.edgeFroms = new int[edgeCount];
+        this.edgeTos = new int[edgeCount];
+        this.edgeTargets = new int[edgeCount];
+        for (int state = 0; state < stateCount; state++) {
+            accepting[state] = dfa.accepting.get(state);
+            edgeOffsets[state + 1] = dfa.edgeOffsets.get(state + 1);
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            edgeFroms[i] = dfa.edgeFroms.get(i);
+            edgeTos[i] = dfa.edgeTos.get(i);
+            edgeTargets[i] = dfa.edgeTargets.get(i);
+        }
+        
+        this.counts = new BigInteger[stateCount];
+        this.minLengths = new int[stateCount];
+        this.maxLengths = new int[stateCount];
+        for (int state : dfa.order) {
+            BigInteger count = accepting[state] ? BigInteger.ONE : BigInteger.ZERO;
+            int stateMinLength = accepting[state] ? 0 : Integer.MAX_VALUE;
+            int stateMaxLength = accepting[state] ? 0 : -1;
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                int target = edgeTargets[i];
+                count = count.add(counts[target].multiply(BigInteger.valueOf((long) edgeTos[i] - edgeFroms[i])));
+                stateMinLength = Math.min(stateMinLength, minLengths[target] + 1);
+                stateMaxLength = Math.max(stateMaxLength, maxLengths[target] + 1);
+            }
+            counts[state] = count;
+            minLengths[state] = stateMinLength;
+            maxLengths[state] = stateMaxLength;
+        }
+        this.longCounts = counts[0].bitLength() < Long.SIZE ? toLongArray(counts) : null;
+        this.lengthCounts = new AtomicReferenceArray<>(stateCount);
+        boolean empty = counts[0].signum() == 0;
+        this.minLength = empty ? 0 : minLengths[0];
+        this.maxLength = empty ? 0 : maxLengths[0];
+        this.shortlex = shortlex;
+        this.lengthOffsets = shortlex ? calculateLengthOffsets() : null;
+    }
+    
+    private BigInteger[] calculateLengthOffsets() {
+        int blockCount = maxLength - minLength + 1;
+        BigInteger[] result = new BigInteger[blockCount + 1];
+        BigInteger offset = BigInteger.ZERO;
+        for (int i = 0; i < blockCount; i++) {
+            result[i] = offset;
+            offset = offset.add(size(minLength + i));
+        }
+        result[blockCount] = offset;
+        return result;
+    }
+    
+    private static StrexPart createAlphabet(StrexNode node, List<StrexAutomaton> automata) {
+        BitSet members = new BitSet();
+        Map<String, char[]> charSets = new HashMap<>();
+        collectChars(node, members, charSets);
+        for (StrexAutomaton automaton : automata) {
+            addChars(automaton.alphabet.toChars(), members, charSets);
+        }
+        char[] chars = new char[members.cardinality()];
+        int i = 0;
+        for (int c = members.nextSetBit(0); c >= 0; c = members.nextSetBit(c + 1)) {
+            chars[i] = (char) c;
+            i++;
+        }
+        return new StrexPart(mergeOrders(chars, charSets.values()));
+    }
+    
+    private static void collectChars(StrexNode node, BitSet members, Map<String, char[]> charSets) {
+        if (node.kind() == StrexNode.Kind.CHARS) {
+            addChars(node.part().toChars(), members, charSets);
+        }
+        for (StrexNode child : node.children()) {
+            collectChars(child, members, charSets);
+        }
+    }
+    
+    private static void addChars(char[] chars, BitSet members, Map<String, char[]> charSets) {
+        for (char c : chars) {
+            members.set(c);
+        }
+        if (chars.length > 1) {
+            charSets.putIfAbsent(new String(chars), chars);
+        }
+    }
+    
+    /**
+     * Merges the orders of the given character sets into a single order of all the characters.
+     * 
+     * <p>The result is a topological order of the precedences given by the sets,
+     * where the ties are broken by collation.
+     * If the sets contradict each other, the collation order is forced for the conflicting characters.</p>
+     * 
+     * @param chars all the characters, in code order
+     * @param charSets the ordered character sets
+     * @return all the characters in the merged order
+     */
+    private static char[] mergeOrders(char[] chars, Collection<char[]> charSets) {
+        int size = chars.length;
+        char[] collationOrder = StrexCollation.sort(chars);
+        int[] collationRanks = new int[size];
+        for (int i = 0; i < size; i++) {
+            collationRanks[Arrays.binarySearch(chars, collationOrder[i])] = i;
+        }
+        
+        List<List<Integer>> successors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            successors.add(new ArrayList<>());
+        }
+        int[] inDegrees = new int[size];
+        for (char[] charSet : charSets) {
+            for (int i = 1; i < charSet.length; i++) {
+                int target = Arrays.binarySearch(chars, charSet[i]);
+                successors.get(Arrays.binarySearch(chars, charSet[i - 1])).add(target);
+                inDegrees[target]++;
+            }
+        }
+        
+        PriorityQueue<Integer> available = new PriorityQueue<>(Comparator.comparingInt(i -> collationRanks[i]));
+        boolean[] queued = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            if (inDegrees[i] == 0) {
+                available.add(i);
+                queued[i] = true;
+            }
+        }
+        char[] result = new char[size];
+        int resultSize = 0;
+        int nextForced = 0;
+        while (resultSize < size) {
+            if (available.isEmpty()) {
+                while (queued[Arrays.binarySearch(chars, collationOrder[nextForced])]) {
+                    nextForced++;
+                }
+                int forced = Arrays.binarySearch(chars, collationOrder[nextForced]);
+                available.add(forced);
+                queued[forced] = true;
+            }
+            
+            int current = available.poll();
+            result[resultSize] = chars[current];
+            resultSize++;
+            for (int successor : successors.get(current)) {
+                inDegrees[successor]--;
+                if (inDegrees[successor] == 0 && !queued[successor]) {
+                    available.add(successor);
+                    queued[successor] = true;
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static long[] toLongArray(BigInteger[] bigIntegers) {
+        int length = bigIntegers.length;
+        long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = bigIntegers[i].longValue();
+        }
+        return result;
+    }
+    
+    
+    int stateCount() {
+        return accepting.length;
+    }
+    
+    BigInteger size() {
+        return counts[0];
+    }
+    
+    /**
+     * Gets the number of accepted strings with the given length.
+     * 
+     * @param length the length of the strings
+     * @return the number of accepted strings with the given length
+     */
+    BigInteger size(int length) {
+        if (counts[0].signum() == 0 || length < minLength || length > maxLength) {
+            return BigInteger.ZERO;
+        }
+        
+        return lengthCountsOf(0).get(length);
+    }
+    
+    private BigInteger countOfLength(int state, int length) {
+        if (length < minLengths[state] || length > maxLengths[state]) {
+            return BigInteger.ZERO;
+        }
+        
+        return lengthCountsOf(state).get(length);
+    }
+    
+    private LengthCounts lengthCountsOf(int state) {
+        LengthCounts cached = lengthCounts.get(state);
+        if (cached != null) {
+            return cached;
+        }
+        
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(state);
+        while (!stack.isEmpty()) {
+            int current = stack.peek();
+            if (lengthCounts.get(current) != null) {
+                stack.pop();
+                continue;
+            }
+            
+            boolean ready = true;
+            for (int i = edgeOffsets[current]; i < edgeOffsets[current + 1]; i++) {
+                if (lengthCounts.get(edgeTargets[i]) == null) {
+                    stack.push(edgeTargets[i]);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                lengthCounts.set(current, computeLengthCounts(current));
+            }
+        }
+        return lengthCounts.get(state);
+    }
+    
+    private LengthCounts computeLengthCounts(int state) {
+        int stateMinLength = minLengths[state];
+        int tableSize = maxLengths[state] - stateMinLength + 1;
+        if (longCounts != null) {
+            long[] values = new long[tableSize];
+            if (accepting[state]) {
+                values[0] = 1L;
+            }
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                LengthCounts targetCounts = lengthCounts.get(edgeTargets[i]);
+                long width = (long) edgeTos[i] - edgeFroms[i];
+                int offset = targetCounts.minLength + 1 - stateMinLength;
+                for (int j = 0; j < targetCounts.longValues.length; j++) {
+                    values[offset + j] += width * targetCounts.longValues[j];
+                }
+            }
+            return new LengthCounts(stateMinLength, values, null);
+        }
+        
+        BigInteger[] values = new BigInteger[tableSize];
+        Arrays.fill(values, BigInteger.ZERO);
+        if (accepting[state]) {
+            values[0] = BigInteger.ONE;
+        }
+        for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+            LengthCounts targetCounts = lengthCounts.get(edgeTargets[i]);
+            BigInteger width = BigInteger.valueOf((long) edgeTos[i] - edgeFroms[i]);
+            int offset = targetCounts.minLength + 1 - stateMinLength;
+            for (int j = 0; j < targetCounts.values.length; j++) {
+                values[offset + j] = values[offset + j].add(width.multiply(targetCounts.values[j]));
+            }
+        }
+        return new LengthCounts(stateMinLength, null, values);
+    }
+    
+    int minLength() {
+        return minLength;
+    }
+    
+    int maxLength() {
+        return maxLength;
+    }
+    
+    char maxChar() {
+        return alphabet.maxChar();
+    }
+    
+    /**
+     * Gets the string with the given index.
+     * 
+     * @param index the index of the string, must be in range
+     * @return the string with the given index
+     */
+    String get(BigInteger index) {
+        if (shortlex) {
+            return getShortlex(index);
+        }
+        
+        StringBuilder resultBuilder = new StringBuilder();
+        BigInteger remaining = index;
+        int state = 0;
+        while (true) {
+            if (accepting[state]) {
+                if (remaining.signum() == 0) {
+                    return resultBuilder.toString();
+                }
+                
+                remaining = remaining.subtract(BigInteger.ONE);
+            }
+            
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                BigInteger targetCount = counts[edgeTargets[i]];
+                BigInteger blockSize = targetCount.multiply(BigInteger.valueOf((long) edgeTos[i] - edgeFroms[i]));
+                if (remaining.compareTo(blockSize) < 0) {
+                    BigInteger[] offsetAndRemainder = remaining.divideAndRemainder(targetCount);
+                    resultBuilder.append(alphabet.charAt(edgeFroms[i] + offsetAndRemainder[0].intValue()));
+                    remaining = offsetAndRemainder[1];
+                    state = edgeTargets[i];
+                    break;
+                }
+                
+                remaining = remaining.subtract(blockSize);
+            }
+        }
+    }
+    
+    /**
+     * Gets the string with the given index, using `long` arithmetic.
+     * 
+     * <p>The size of this automaton must fit in a `long` value.</p>
+     * 
+     * @param index the index of the string, must be in range
+     * @return the string with the given index
+     */
+    String get(long index) {
+        if (shortlex) {
+            return getShortlex(BigInteger.valueOf(index));
+        }
+        
+        StringBuilder resultBuilder = new StringBuilder();
+        long remaining = index;
+        int state = 0;
+        while (true) {
+            if (accepting[state]) {
+                if (remaining == 0L) {
+                    return resultBuilder.toString();
+                }
+                
+                remaining--;
+            }
+            
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                long targetCount = longCounts[edgeTargets[i]];
+                long blockSize = targetCount * (edgeTos[i] - edgeFroms[i]);
+                if (remaining < blockSize) {
+                    resultBuilder.append(alphabet.charAt(edgeFroms[i] + (int) (remaining / targetCount)));
+                    remaining %= targetCount;
+                    state = edgeTargets[i];
+                    break;
+                }
+                
+                remaining -= blockSize;
+            }
+        }
+    }
+    
+    /**
+     * Finds the given text, and provides its index,
+     * or, if not found, the (-1)-based insertion point.
+     * 
+     * @param text the text to find
+     * @return the index of the text or a negative number
+     */
+    BigInteger indexOf(String text) {
+        if (shortlex) {
+            return indexOfShortlex(text);
+        }
+        
+        BigInteger[] rankAndState = walk(text);
+        BigInteger rank = rankAndState[0];
+        int state = rankAndState[1].intValue();
+        return state >= 0 && accepting[state] ? rank : rank.negate().subtract(BigInteger.ONE);
+    }
+    
+    /**
+     * Finds the given text, and provides its index,
+     * or, if not found, the (-1)-based insertion point, using `long` arithmetic.
+     * 
+     * <p>The size of this automaton must fit in a `long` value.</p>
+     * 
+     * @param text the text to find
+     * @return the index of the text or a negative number
+     */
+    long indexOfLong(String text) {
+        if (shortlex) {
+            return indexOfShortlex(text).longValue();
+        }
+        
+        long rank = 0L;
+        int state = 0;
+        int textLength = text.length();
+        for (int position = 0; position < textLength; position++) {
+            if (accepting[state]) {
+                rank++;
+            }
+            
+            int posResult = alphabet.indexOf(text.charAt(position));
+            int pos = posResult >= 0 ? posResult : 0 - posResult - 1;
+            int nextState = -1;
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1] && edgeFroms[i] <= pos; i++) {
+                long targetCount = longCounts[edgeTargets[i]];
+                if (posResult >= 0 && pos < edgeTos[i]) {
+                    rank += targetCount * (pos - edgeFroms[i]);
+                    nextState = edgeTargets[i];
+                    break;
+                }
+                
+                rank += targetCount * (Math.min(edgeTos[i], pos) - edgeFroms[i]);
+            }
+            if (nextState < 0) {
+                return 0L - rank - 1L;
+            }
+            
+            state = nextState;
+        }
+        return accepting[state] ? rank : 0L - rank - 1L;
+    }
+    
+    /**
+     * Finds the index range of the strings starting with the given prefix.
+     * 
+     * @param prefix the prefix to search for
+     * @return the start (inclusive) and the end (exclusive) of the range
+     */
+    BigInteger[] prefixRange(String prefix) {
+        if (shortlex && minLength != maxLength) {
+            throw new UnsupportedOperationException("Prefix ranges are not contiguous in shortlex order");
+        }
+        
+        BigInteger[] rankAndState = walk(prefix);
+        BigInteger rank = rankAndState[0];
+        int state = rankAndState[1].intValue();
+        BigInteger count = state >= 0 ? counts[state] : BigInteger.ZERO;
+        return new BigInteger[] { rank, rank.add(count) };
+    }
+    
+    private BigInteger[] walk(String text) {
+        BigInteger rank = BigInteger.ZERO;
+        int state = 0;
+        int textLength = text.length();
+        for (int position = 0; position < textLength; position++) {
+            if (accepting[state]) {
+                rank = rank.add(BigInteger.ONE);
+            }
+            
+            int posResult = alphabet.indexOf(text.charAt(position));
+            int pos = posResult >= 0 ? posResult : 0 - posResult - 1;
+            int nextState = -1;
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1] && edgeFroms[i] <= pos; i++) {
+                BigInteger targetCount = counts[edgeTargets[i]];
+                if (posResult >= 0 && pos < edgeTos[i]) {
+                    rank = rank.add(targetCount.multiply(BigInteger.valueOf((long) pos - edgeFroms[i])));
+                    nextState = edgeTargets[i];
+                    break;
+                }
+                
+                int end = Math.min(edgeTos[i], pos);
+                rank = rank.add(targetCount.multiply(BigInteger.valueOf((long) end - edgeFroms[i])));
+            }
+            if (nextState < 0) {
+                return new BigInteger[] { rank, BigInteger.valueOf(-1L) };
+            }
+            
+            state = nextState;
+        }
+        return new BigInteger[] { rank, BigInteger.valueOf(state) };
+    }
+    
+    private String getShortlex(BigInteger index) {
+        int low = 0;
+        int high = lengthOffsets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lengthOffsets[mid].compareTo(index) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int textLength = minLength + low;
+        
+        char[] result = new char[textLength];
+        BigInteger remaining = index.subtract(lengthOffsets[low]);
+        int state = 0;
+        for (int position = 0; position < textLength; position++) {
+            int remainingLength = textLength - position - 1;
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                BigInteger targetCount = countOfLength(edgeTargets[i], remainingLength);
+                BigInteger blockSize = targetCount.multiply(BigInteger.valueOf((long) edgeTos[i] - edgeFroms[i]));
+                if (remaining.compareTo(blockSize) < 0) {
+                    BigInteger[] offsetAndRemainder = remaining.divideAndRemainder(targetCount);
+                    result[position] = alphabet.charAt(edgeFroms[i] + offsetAndRemainder[0].intValue());
+                    remaining = offsetAndRemainder[1];
+                    state = edgeTargets[i];
+                    break;
+                }
+                
+                remaining = remaining.subtract(blockSize);
+            }
+        }
+        return new String(result);
+    }
+    
+    private BigInteger indexOfShortlex(String text) {
+        int textLength = text.length();
+        if (textLength < minLength) {
+            return BigInteger.ONE.negate();
+        } else if (textLength > maxLength) {
+            return counts[0].negate().subtract(BigInteger.ONE);
+        }
+        
+        BigInteger rank = lengthOffsets[textLength - minLength];
+        int state = 0;
+        for (int position = 0; position < textLength; position++) {
+            int remainingLength = textLength - position - 1;
+            int posResult = alphabet.indexOf(text.charAt(position));
+            int pos = posResult >= 0 ? posResult : 0 - posResult - 1;
+            int nextState = -1;
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1] && edgeFroms[i] <= pos; i++) {
+                BigInteger targetCount = countOfLength(edgeTargets[i], remainingLength);
+                if (posResult >= 0 && pos < edgeTos[i]) {
+                    rank = rank.add(targetCount.multiply(BigInteger.valueOf((long) pos - edgeFroms[i])));
+                    nextState = edgeTargets[i];
+                    break;
+                }
+                
+                int end = Math.min(edgeTos[i], pos);
+                rank = rank.add(targetCount.multiply(BigInteger.valueOf((long) end - edgeFroms[i])));
+            }
+            if (nextState < 0) {
+                return rank.negate().subtract(BigInteger.ONE);
+            }
+            
+            state = nextState;
+        }
+        return accepting[state] ? rank : rank.negate().subtract(BigInteger.ONE);
+    }
+    
+    /**
+     * Compares two strings in the order of this automaton.
+     * 
+     * @param text1 the first string
+     * @param text2 the second string
+     * @return a negative number, zero, or a positive number
+     */
+    int compare(String text1, String text2) {
+        int length1 = text1.length();
+        int length2 = text2.length();
+        if (shortlex && length1 != length2) {
+            return Integer.compare(length1, length2);
+        }
+        
+        int commonLength = Math.min(length1, length2);
+        for (int i = 0; i < commonLength; i++) {
+            char c1 = text1.charAt(i);
+            char c2 = text2.charAt(i);
+            if (c1 != c2) {
+                int rank1 = rankInAlphabet(c1);
+                int rank2 = rankInAlphabet(c2);
+                return rank1 != rank2 ? Integer.compare(rank1, rank2) : Character.compare(c1, c2);
+            }
+        }
+        return Integer.compare(length1, length2);
+    }
+    
+    private int rankInAlphabet(char c) {
+        int posResult = alphabet.indexOf(c);
+        return posResult >= 0 ? (posResult * 2) + 1 : (0 - posResult - 1) * 2;
+    }
+    
+    /**
+     * Creates an iterator over the given index range.
+     * 
+     * <p>After the first string, each step moves to the successor string incrementally.</p>
+     * 
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @return the string iterator
+     */
+    Iterator<String> iterator(BigInteger from, BigInteger to) {
+        return shortlex ? new ShortlexIterator(from, to) : new PathIterator(from, to);
+    }
+    
+    private int findEdge(int state, int pos) {
+        for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+            if (edgeFroms[i] <= pos && pos < edgeTos[i]) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No transition");
+    }
+    
+    
+    private class PathIterator implements Iterator<String> {
+    
+        private final int[] states;
+        
+        private final int[] positions;
+        
+        private final char[] buffer;
+        
+        private int depth = 0;
+        
+        private BigInteger remaining;
+        
+        
+        private PathIterator(BigInteger from, BigInteger to) {
+            this.states = new int[maxLength + 1];
+            this.positions = new int[maxLength];
+            this.buffer = new char[maxLength];
+            this.remaining = to.subtract(from);
+            if (remaining.signum() > 0) {
+                String first = get(from);
+                int state = 0;
+                for (int i = 0; i < first.length(); i++) {
+                    int pos = alphabet.indexOf(first.charAt(i));
+                    positions[i] = pos;
+                    buffer[i] = first.charAt(i);
+                    state = edgeTargets[findEdge(state, pos)];
+                    states[i + 1] = state;
+                }
+                depth = first.length();
+            }
+        }
+        
+        
+        @Override
+        public boolean hasNext() {
+            return remaining.signum() > 0;
+        }
+        
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            
+            String result = new String(buffer, 0, depth);
+            remaining = remaining.subtract(BigInteger.ONE);
+            if (remaining.signum() > 0) {
+                advance();
+            }
+            return result;
+        }
+        
+        private void advance() {
+            if (edgeOffsets[states[depth] + 1] > edgeOffsets[states[depth]]) {
+                descend(-1);
+                return;
+            }
+            
+            while (depth > 0) {
+                depth--;
+                if (descend(positions[depth])) {
+                    return;
+                }
+            }
+        }
+        
+        private boolean descend(int afterPosition) {
+            int pos = afterPosition;
+            while (true) {
+                int state = states[depth];
+                int edge = nextEdge(state, pos);
+                if (edge < 0) {
+                    return false;
+                }
+                
+                int nextPos = Math.max(pos + 1, edgeFroms[edge]);
+                positions[depth] = nextPos;
+                buffer[depth] = alphabet.charAt(nextPos);
+                depth++;
+                states[depth] = edgeTargets[edge];
+                if (accepting[states[depth]]) {
+                    return true;
+                }
+                
+                pos = -1;
+            }
+        }
+        
+        private int nextEdge(int state, int afterPosition) {
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                if (edgeTos[i] > afterPosition + 1) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    
+    }
+    
+    
+    private class ShortlexIterator implements Iterator<String> {
+    
+        private final int[] states;
+        
+        private final int[] positions;
+        
+        private final char[] buffer;
+        
+        private int textLength = 0;
+        
+        private BigInteger remaining;
+        
+        
+        private ShortlexIterator(BigInteger from, BigInteger to) {
+            this.states = new int[maxLength + 1];
+            this.positions = new int[maxLength];
+            this.buffer = new char[maxLength];
+            this.remaining = to.subtract(from);
+            if (remaining.signum() > 0) {
+                String first = get(from);
+                int state = 0;
+                for (int i = 0; i < first.length(); i++) {
+                    int pos = alphabet.indexOf(first.charAt(i));
+                    positions[i] = pos;
+                    buffer[i] = first.charAt(i);
+                    state = edgeTargets[findEdge(state, pos)];
+                    states[i + 1] = state;
+                }
+                textLength = first.length();
+            }
+        }
+        
+        
+        @Override
+        public boolean hasNext() {
+            return remaining.signum() > 0;
+        }
+        
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            
+            String result = new String(buffer, 0, textLength);
+            remaining = remaining.subtract(BigInteger.ONE);
+            if (remaining.signum() > 0) {
+                advance();
+            }
+            return result;
+        }
+        
+        private void advance() {
+            for (int position = textLength - 1; position >= 0; position--) {
+                if (fillFrom(position, positions[position])) {
+                    return;
+                }
+            }
+            
+            do {
+                textLength++;
+            } while (countOfLength(0, textLength).signum() == 0);
+            fillFrom(0, -1);
+        }
+        
+        private boolean fillFrom(int startPosition, int afterPosition) {
+            int pos = afterPosition;
+            for (int position = startPosition; position < textLength; position++) {
+                int state = states[position];
+                int remainingLength = textLength - position - 1;
+                int edge = nextEdge(state, pos, remainingLength);
+                if (edge < 0) {
+                    return false;
+                }
+                
+                int nextPos = Math.max(pos + 1, edgeFroms[edge]);
+                positions[position] = nextPos;
+                buffer[position] = alphabet.charAt(nextPos);
+                states[position + 1] = edgeTargets[edge];
+                pos = -1;
+            }
+            return true;
+        }
+        
+        private int nextEdge(int state, int afterPosition, int remainingLength) {
+            for (int i = edgeOffsets[state]; i < edgeOffsets[state + 1]; i++) {
+                if (edgeTos[i] > afterPosition + 1 && countOfLength(edgeTargets[i], remainingLength).signum() > 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    
+    }
+    
+    
+    private static class LengthCounts {
+    
+        private final int minLength;
+        
+        private final long[] longValues;
+        
+        private final BigInteger[] values;
+        
+        
+        private LengthCounts(int minLength, long[] longValues, BigInteger[] values) {
+            this.minLength = minLength;
+            this.longValues = longValues;
+            this.values = values;
+        }
+        
+        
+        private BigInteger get(int length) {
+            int offset = length - minLength;
+            return longValues != null ? BigInteger.valueOf(longValues[offset]) : values[offset];
+        }
+    
+    }
+    
+    
+    private static class Nfa {
+    
+        private final StrexPart alphabet;
+        
+        private final List<List<Integer>> epsilonEdges = new ArrayList<>();
+        
+        private final List<List<int[]>> charEdges = new ArrayList<>();
+        
+        private final List<BitSet> labels = new ArrayList<>();
+        
+        private final Map<StrexNode, Integer> labelIds = new HashMap<>();
+        
+        private int[] closureMarks = new int[0];
+        
+        private int[] closureBuffer = new int[0];
+        
+        private int closureGeneration = 0;
+        
+        
+        private Nfa(StrexPart alphabet) {
+            this.alphabet = alphabet;
+        }
+        
+        
+        private int addState() {
+            epsilonEdges.add(new ArrayList<>());
+            charEdges.add(new ArrayList<>());
+            return epsilonEdges.size() - 1;
+        }
+        
+        private int build(StrexNode node, int start) {
+            int state = start;
+            for (int i = 0; i < node.minRepeat(); i++) {
+                state = buildOnce(node, state);
+            }
+            
+            int optionalCount = node.maxRepeat() - node.minRepeat();
+            if (optionalCount == 0) {
+                return state;
+            }
+            
+            int end = addState();
+            for (int i = 0; i < optionalCount; i++) {
+                epsilonEdges.get(state).add(end);
+                state = buildOnce(node, state);
+            }
+            epsilonEdges.get(state).add(end);
+            return end;
+        }
+        
+        private int buildOnce(StrexNode node, int start) {
+            if (node.kind() == StrexNode.Kind.CHARS) {
+                int end = addState();
+                charEdges.get(start).add(new int[] { labelIdOf(node), end });
+                return end;
+            } else if (node.kind() == StrexNode.Kind.ALTERNATION) {
+                int end = addState();
+                for (StrexNode child : node.children()) {
+                    epsilonEdges.get(build(child, start)).add(end);
+                }
+                return end;
+            }
+            
+            int state = start;
+            for (StrexNode child : node.children()) {
+                state = build(child, state);
+            }
+            return state;
+        }
+        
+        /**
+         * Embeds a copy of the given automaton between the given states.
+         * 
+         * @param automaton the automaton to embed
+         * @param start the state to start the copy from
+         * @param end the state reached from the accepting states of the copy
+         */
+        private void embed(StrexAutomaton automaton, int start, int end) {
+            int stateCount = automaton.stateCount();
+            int offset = epsilonEdges.size();
+            for (int state = 0; state < stateCount; state++) {
+                addState();
+            }
+            epsilonEdges.get(start).add(offset);
+            for (int state = 0; state < stateCount; state++) {
+                if (automaton.accepting[state]) {
+                    epsilonEdges.get(offset + state).add(end);
+                }
+                for (int i = automaton.edgeOffsets[state]; i < automaton.edgeOffsets[state + 1]; i++) {
+                    int labelId = addLabel(automaton.alphabet, automaton.edgeFroms[i], automaton.edgeTos[i]);
+                    charEdges.get(offset + state).add(new int[] { labelId, offset + automaton.edgeTargets[i] });
+                }
+            }
+        }
+        
+        private int labelIdOf(StrexNode node) {
+            return labelIds.computeIfAbsent(node, n -> addLabel(n.part(), 0, n.part().size()));
+        }
+        
+        private int addLabel(StrexPart part, int from, int to) {
+            BitSet label = new BitSet();
+            for (int position = from; position < to; position++) {
+                label.set(alphabet.indexOf(part.charAt(position)));
+            }
+            labels.add(label);
+            return labels.size() - 1;
+        }
+        
+        private int charEdgeCount() {
+            int result = 0;
+            for (List<int[]> stateCharEdges : charEdges) {
+                result += stateCharEdges.size();
+            }
+            return result;
+        }
+        
+        /**
+         * Collects the states reachable from the given states via epsilon edges.
+         * 
+         * <p>The cost is proportional to the size of the result, not to the number of states,
+         * so long chains of optional copies (like `x{0,100000}`) are determinized in linear time.</p>
+         * 
+         * @param states the states to start from, may contain duplicates
+         * @param count the number of the states to use
+         * @return the sorted states of the closure
+         */
+        private int[] closure(int[] states, int count) {
+            int stateCount = epsilonEdges.size();
+            if (closureMarks.length < stateCount) {
+                closureMarks = new int[stateCount];
+                closureBuffer = new int[stateCount];
+                closureGeneration = 0;
+            }
+            closureGeneration++;
+            
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                if (closureMarks[states[i]] != closureGeneration) {
+                    closureMarks[states[i]] = closureGeneration;
+                    closureBuffer[size] = states[i];
+                    size++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                for (int target : epsilonEdges.get(closureBuffer[i])) {
+                    if (closureMarks[target] != closureGeneration) {
+                        closureMarks[target] = closureGeneration;
+                        closureBuffer[size] = target;
+                        size++;
+                    }
+                }
+            }
+            int[] result = Arrays.copyOf(closureBuffer, size);
+            Arrays.sort(result);
+            return result;
+        }
+    
+    }
+    
+    
+    private static class Dfa {
+    
+        private static final int MAX_STATES = 1 << 17;
+        
+        
+        private final List<Boolean> accepting = new ArrayList<>();
+        
+        private final List<Integer> edgeOffsets = new ArrayList<>();
+        
+        private final List<Integer> edgeFroms = new ArrayList<>();
+        
+        private final List<Integer> edgeTos = new ArrayList<>();
+        
+        private final List<Integer> edgeTargets = new ArrayList<>();
+        
+        private final List<Integer> order = new ArrayList<>();
+        
+        
+        private Dfa() {
+            // filled by minimize()
+        }
+        
+        private Dfa(Nfa nfa, int nfaEnd) {
+            int[] boundaries = collectBoundaries(nfa.labels);
+            int classCount = boundaries.length - 1;
+            List<BitSet> labelClasses = new ArrayList<>();
+            for (BitSet label : nfa.labels) {
+                BitSet classes = new BitSet();
+                for (int i = 0; i < classCount; i++) {
+                    if (label.get(boundaries[i])) {
+                        classes.set(i);
+                    }
+                }
+                labelClasses.add(classes);
+            }
+            
+            Map<StateSet, Integer> stateIds = new HashMap<>();
+            List<StateSet> stateSets = new ArrayList<>();
+            StateSet initialClosure = new StateSet(nfa.closure(new int[] { 0 }, 1));
+            stateIds.put(initialClosure, 0);
+            stateSets.add(initialClosure);
+            edgeOffsets.add(0);
+            int[] targetStates = new int[nfa.charEdgeCount()];
+            for (int state = 0; state < stateSets.size(); state++) {
+                int[] nfaStates = stateSets.get(state).states;
+                accepting.add(Arrays.binarySearch(nfaStates, nfaEnd) >= 0);
+                int previousTarget = -1;
+                for (int i = 0; i < classCount; i++) {
+                    int targetCount = 0;
+                    for (int nfaState : nfaStates) {
+                        for (int[] charEdge : nfa.charEdges.get(nfaState)) {
+                            if (labelClasses.get(charEdge[0]).get(i)) {
+                                targetStates[targetCount] = charEdge[1];
+                                targetCount++;
+                            }
+                        }
+                    }
+                    if (targetCount == 0) {
+                        previousTarget = -1;
+                        continue;
+                    }
+                    
+                    StateSet targetClosure = new StateSet(nfa.closure(targetStates, targetCount));
+                    Integer target = stateIds.get(targetClosure);
+                    if (target == null) {
+                        target = stateSets.size();
+                        if (target == MAX_STATES) {
+                            throw new IllegalArgumentException(
+                                    "Pattern is too complex, its automaton has more than " + MAX_STATES + " states");
+                        }
+                        
+                        stateIds.put(targetClosure, target);
+                        stateSets.add(targetClosure);
+                    }
+                    int lastEdge = edgeTargets.size() - 1;
+                    if (target == previousTarget && edgeTos.get(lastEdge) == boundaries[i]) {
+                        edgeTos.set(lastEdge, boundaries[i + 1]);
+                    } else {
+                        edgeFroms.add(boundaries[i]);
+                        edgeTos.add(boundaries[i + 1]);
+                        edgeTargets.add(target);
+                    }
+                    previousTarget = target;
+                }
+                edgeOffsets.add(edgeTargets.size());
+            }
+        }
+        
+        /**
+         * Creates the equivalent minimal automaton, without dead states.
+         * 
+         * <p>States are processed in reverse topological order,
+         * and a state is merged into an earlier one if their acceptance and their
+         * transitions (after merging the targets) are the same.
+         * The states of the result are numbered in breadth-first order from the initial state.</p>
+         * 
+         * @return the minimized automaton with its reverse topological order
+         */
+        private Dfa minimize() {
+            int[] reverseOrder = reverseTopologicalOrder();
+            int[] classes = new int[accepting.size()];
+            Map<List<Integer>, Integer> classIds = new HashMap<>();
+            List<List<Integer>> signatures = new ArrayList<>();
+            for (int state : reverseOrder) {
+                List<Integer> signature = signatureOf(state, classes, signatures);
+                Integer classId = classIds.get(signature);
+                if (classId == null) {
+                    classId = signatures.size();
+                    classIds.put(signature, classId);
+                    signatures.add(signature);
+                }
+                classes[state] = classId;
+            }
+            
+            Dfa result = new Dfa();
+            int classCount = signatures.size();
+            int[] newStates = new int[classCount];
+            Arrays.fill(newStates, -1);
+            List<Integer> queue = new ArrayList<>();
+            queue.add(classes[0]);
+            newStates[classes[0]] = 0;
+            result.edgeOffsets.add(0);
+            for (int i = 0; i < queue.size(); i++) {
+                List<Integer> signature = signatures.get(queue.get(i));
+                result.accepting.add(signature.get(0) == 1);
+                for (int j = 1; j < signature.size(); j += 3) {
+                    int targetClass = signature.get(j + 2);
+                    if (newStates[targetClass] < 0) {
+                        newStates[targetClass] = queue.size();
+                        queue.add(targetClass);
+                    }
+                    result.edgeFroms.add(signature.get(j));
+                    result.edgeTos.add(signature.get(j + 1));
+                    result.edgeTargets.add(newStates[targetClass]);
+                }
+                result.edgeOffsets.add(result.edgeTargets.size());
+            }
+            for (int classId = 0; classId < classCount; classId++) {
+                if (newStates[classId] >= 0) {
+                    result.order.add(newStates[classId]);
+                }
+            }
+            return result;
+        }
+        
+        private List<Integer> signatureOf(int state, int[] classes, List<List<Integer>> signatures) {
+            List<Integer> result = new ArrayList<>();
+            result.add(accepting.get(state) ? 1 : 0);
+            for (int i = edgeOffsets.get(state); i < edgeOffsets.get(state + 1); i++) {
+                int targetClass = classes[edgeTargets.get(i)];
+                if (isDead(signatures.get(targetClass))) {
+                    continue;
+                }
+                
+                int size = result.size();
+                if (size > 1 && result.get(size - 1) == targetClass && result.get(size - 2).equals(edgeFroms.get(i))) {
+                    result.set(size - 2, edgeTos.get(i));
+                } else {
+                    result.add(edgeFroms.get(i));
+                    result.add(edgeTos.get(i));
+                    result.add(targetClass);
+                }
+            }
+            return result;
+        }
+        
+        private static boolean isDead(List<Integer> signature) {
+            return signature.size() == 1 && signature.get(0) == 0;
+        }
+        
+        private int[] reverseTopologicalOrder() {
+            int stateCount = accepting.size();
+            int[] outDegrees = new int[stateCount];
+            List<List<Integer>> predecessors = new ArrayList<>(stateCount);
+            for (int state = 0; state < stateCount; state++) {
+                predecessors.add(new ArrayList<>());
+            }
+            for (int state = 0; state < stateCount; state++) {
+                for (int i = edgeOffsets.get(state); i < edgeOffsets.get(state + 1); i++) {
+                    outDegrees[state]++;
+                    predecessors.get(edgeTargets.get(i)).add(state);
+                }
+            }
+            
+            int[] result = new int[stateCount];
+            int size = 0;
+            for (int state = 0; state < stateCount; state++) {
+                if (outDegrees[state] == 0) {
+                    result[size] = state;
+                    size++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                for (int predecessor : predecessors.get(result[i])) {
+                    outDegrees[predecessor]--;
+                    if (outDegrees[predecessor] == 0) {
+                        result[size] = predecessor;
+                        size++;
+                    }
+                }
+            }
+            if (size < stateCount) {
+                throw new IllegalArgumentException("Pattern has infinitely many matches");
+            }
+            return result;
+        }
+        
+        private static int[] collectBoundaries(List<BitSet> labels) {
+            TreeSet<Integer> boundarySet = new TreeSet<>();
+            for (BitSet label : labels) {
+                for (int from = label.nextSetBit(0); from >= 0; from = label.nextSetBit(from)) {
+                    int to = label.nextClearBit(from);
+                    boundarySet.add(from);
+                    boundarySet.add(to);
+                    from = to;
+                }
+            }
+            int[] result = new int[boundarySet.size()];
+            int i = 0;
+            for (int boundary : boundarySet) {
+                result[i] = boundary;
+                i++;
+            }
+            return result.length > 0 ? result : new int[] { 0 };
+        }
+    
+    }
+    
+    
+    private static final class StateSet {
+    
+        private final int[] states;
+        
+        private final int hashCode;
+        
+        
+        private StateSet(int[] states) {
+            this.states = states;
+            this.hashCode = Arrays.hashCode(states);
+        }
+        
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateSet && Arrays.equals(states, ((StateSet) other).states);
+        }
+    
+    }
+
+}
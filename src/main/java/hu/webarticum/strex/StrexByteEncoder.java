@@ -0,0 +1,118 @@
+package hu.webarticum.strex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming encoder of generated characters into a byte buffer.
+ * 
+ * <p>Supports UTF-8, ISO-8859-1 and US-ASCII.
+ * The bytes are computed arithmetically from the character codes,
+ * without any intermediate string or charset encoder.
+ * Unmappable characters, unmappable surrogate pairs and lone surrogates
+ * are each replaced with a single `?`, like in {@link String#getBytes(Charset)}.</p>
+ */
+final class StrexByteEncoder {
+    
+    private static final byte REPLACEMENT = (byte) '?';
+    
+    
+    private final ByteBuffer target;
+    
+    private final int singleByteLimit;
+    
+    private char pendingHighSurrogate = 0;
+    
+    
+    StrexByteEncoder(ByteBuffer target, Charset charset) {
+        this.target = target;
+        this.singleByteLimit = singleByteLimitOf(charset);
+    }
+    
+    private static int singleByteLimitOf(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return 0;
+        } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            return 0x100;
+        } else if (charset.equals(StandardCharsets.US_ASCII)) {
+            return 0x80;
+        } else {
+            throw new IllegalArgumentException("Unsupported charset: " + charset);
+        }
+    }
+    
+    static int maxBytesPerChar(Charset charset, char maxChar) {
+        if (singleByteLimitOf(charset) > 0 || maxChar < 0x80) {
+            return 1;
+        } else if (maxChar < 0x800) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+    
+    
+    void put(char c) {
+        if (pendingHighSurrogate != 0) {
+            char highSurrogate = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                putSurrogatePair(highSurrogate, c);
+                return;
+            }
+            
+            target.put(REPLACEMENT);
+        }
+        
+        if (singleByteLimit > 0) {
+            putSingleByte(c);
+        } else if (c < 0x80) {
+            target.put((byte) c);
+        } else if (c < 0x800) {
+            target.put((byte) (0xC0 | (c >> 6)));
+            target.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            target.put(REPLACEMENT);
+        } else {
+            target.put((byte) (0xE0 | (c >> 12)));
+            target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            target.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+    
+    private void putSingleByte(char c) {
+        if (c < singleByteLimit) {
+            target.put((byte) c);
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else {
+            target.put(REPLACEMENT);
+        }
+    }
+    
+    private void putSurrogatePair(char highSurrogate, char lowSurrogate) {
+        if (singleByteLimit > 0) {
+            target.put(REPLACEMENT);
+        } else {
+            putCodePoint(Character.toCodePoint(highSurrogate, lowSurrogate));
+        }
+    }
+    
+    private void putCodePoint(int codePoint) {
+        target.put((byte) (0xF0 | (codePoint >> 18)));
+        target.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        target.put((byte) (0x80 | (codePoint & 0x3F)));
+    }
+    
+    void finish() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            target.put(REPLACEMENT);
+        }
+    }
+    
+}
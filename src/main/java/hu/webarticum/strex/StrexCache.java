@@ -0,0 +1,187 @@
+package hu.webarticum.strex;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Bounded, thread-safe cache of compiled {@link Strex} objects, keyed by their patterns.</p>
+ * 
+ * <p>Lookups are plain concurrent map reads, so repeated compiles of the same pattern
+ * do not block each other.
+ * If the number of cached patterns exceeds the maximum size,
+ * patterns are evicted in an approximate least recently used order (the clock algorithm):
+ * a hit only marks the pattern as used, and patterns not used since the previous eviction pass
+ * are evicted first.
+ * Insertions and evictions are serialized, hits are lock-free.</p>
+ * 
+ * <p>Example of use:</p>
+ * 
+ * <pre>
+ * StrexCache cache = new StrexCache(100);
+ * Strex identifiers = cache.compile("PID:\\d{3}");
+ * System.out.println(cache.compile("PID:\\d{3}") == identifiers); // true
+ * System.out.println(cache.hitCount());                           // 1
+ * </pre>
+ */
+public class StrexCache {
+
+    private final int maximumSize;
+    
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    private final Queue<Entry> clockQueue = new ArrayDeque<>();
+    
+    private final Object lock = new Object();
+    
+    private final LongAdder hitCount = new LongAdder();
+    
+    private final LongAdder missCount = new LongAdder();
+    
+    private final LongAdder evictionCount = new LongAdder();
+    
+    
+    /**
+     * Creates a new cache with the given capacity.
+     * 
+     * @param maximumSize the maximum number of cached patterns
+     */
+    public StrexCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        
+        this.maximumSize = maximumSize;
+    }
+    
+    
+    /**
+     * Gets the compiled `Strex` object for the given pattern,
+     * or compiles and caches it if not found.
+     * 
+     * @param pattern the regular expression used as a template
+     * @return the `Strex` object containing the matching strings
+     */
+    public Strex compile(String pattern) {
+        Entry entry = entries.get(pattern);
+        if (entry != null) {
+            hitCount.increment();
+            touch(entry);
+            return entry.strex;
+        }
+        
+        missCount.increment();
+        Entry newEntry = new Entry(pattern, Strex.compile(pattern));
+        synchronized (lock) {
+            Entry existingEntry = entries.putIfAbsent(pattern, newEntry);
+            if (existingEntry != null) {
+                touch(existingEntry);
+                return existingEntry.strex;
+            }
+            
+            clockQueue.add(newEntry);
+            evict();
+        }
+        return newEntry.strex;
+    }
+    
+    private void touch(Entry entry) {
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+    }
+    
+    private void evict() {
+        while (entries.size() > maximumSize) {
+            Entry entry = clockQueue.remove();
+            if (entry.referenced) {
+                entry.referenced = false;
+                clockQueue.add(entry);
+            } else {
+                entries.remove(entry.pattern);
+                evictionCount.increment();
+            }
+        }
+    }
+    
+    /**
+     * Gets the maximum number of cached patterns.
+     * 
+     * @return the capacity of this cache
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+    
+    /**
+     * Gets the current number of cached patterns.
+     * 
+     * @return the number of cached patterns
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Gets the number of compiles served from this cache.
+     * 
+     * @return the number of cache hits
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+    
+    /**
+     * Gets the number of compiles that were not found in this cache.
+     * 
+     * @return the number of cache misses
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+    
+    /**
+     * Gets the number of patterns evicted from this cache due to its size limit.
+     * 
+     * @return the number of evictions
+     */
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+    
+    /**
+     * Removes all the cached patterns. The counters are not reset.
+     */
+    public void clear() {
+        synchronized (lock) {
+            entries.clear();
+            clockQueue.clear();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "StrexCache[size: " + size() + ", hits: " + hitCount() + ", misses: " + missCount() +
+                ", evictions: " + evictionCount() + "]";
+    }
+    
+    
+    private static class Entry {
+    
+        private final String pattern;
+        
+        private final Strex strex;
+        
+        private volatile boolean referenced = false;
+        
+        
+        private Entry(String pattern, Strex strex) {
+            this.pattern = pattern;
+            this.strex = strex;
+        }
+    
+    }
+
+}
@@ -0,0 +1,80 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+
+/**
+ * Lazy view of a generated string, or of a part of it.
+ * 
+ * <p>Each character is computed from the digit decomposition of the index on access,
+ * so only the inspected positions are decoded.
+ * The materialized string is cached on the first call of {@link #toString()}.</p>
+ * 
+ * <p>Like {@link StringBuilder}, this class does not override
+ * {@link Object#equals(Object)} and {@link Object#hashCode()},
+ * use {@link #toString()} to compare with strings.</p>
+ */
+final class StrexCharSequence implements CharSequence {
+    
+    private final Strex strex;
+    
+    private final long longIndex;
+    
+    private final BigInteger bigIndex;
+    
+    private final int start;
+    
+    private final int end;
+    
+    private String string = null;
+    
+    
+    StrexCharSequence(Strex strex, long longIndex, BigInteger bigIndex, int start, int end) {
+        this.strex = strex;
+        this.longIndex = longIndex;
+        this.bigIndex = bigIndex;
+        this.start = start;
+        this.end = end;
+    }
+    
+    
+    @Override
+    public int length() {
+        return end - start;
+    }
+    
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new StringIndexOutOfBoundsException("Index out of range: " + index + "(length: " + (end - start) + ")");
+        }
+        
+        if (string != null) {
+            return string.charAt(index);
+        }
+        
+        int position = start + index;
+        return bigIndex != null ? strex.charAt(bigIndex, position) : strex.charAt(longIndex, position);
+    }
+    
+    @Override
+    public CharSequence subSequence(int subStart, int subEnd) {
+        if (subStart < 0 || subEnd > end - start || subStart > subEnd) {
+            throw new StringIndexOutOfBoundsException(
+                    "Invalid range: [" + subStart + ", " + subEnd + ") (length: " + (end - start) + ")");
+        }
+        
+        return new StrexCharSequence(strex, longIndex, bigIndex, start + subStart, start + subEnd);
+    }
+    
+    @Override
+    public String toString() {
+        String result = string;
+        if (result == null) {
+            String fullString = bigIndex != null ? strex.get(bigIndex) : strex.get(longIndex);
+            result = fullString.substring(start, end);
+            string = result;
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,194 @@
+package hu.webarticum.strex;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collation order of characters, used for sorting character classes and for placing absent characters.
+ * 
+ * <p>Characters are compared by their collation keys in the US locale, and then by their codes.
+ * The order of all the `char` values is precomputed on first use, once for all the instances,
+ * and stored as runs of consecutive character codes (a few hundred of them).
+ * After that, ranks are found by binary search,
+ * and large sets of character ranges are sorted by cutting these runs with the ranges,
+ * without allocating per character or running the collation algorithm.
+ * Small sets are sorted directly, so they do not need the precomputed order.</p>
+ */
+final class StrexCollation {
+
+    private static final int MAX_DIRECT_SORT_SIZE = 256;
+    
+    private static final ThreadLocal<Collator> COLLATOR =
+            ThreadLocal.withInitial(() -> Collator.getInstance(Locale.US));
+    
+    
+    private StrexCollation() {
+        // utility class
+    }
+    
+    
+    /**
+     * Sorts the given characters by collation.
+     * 
+     * @param chars the characters to sort
+     * @return the sorted characters
+     */
+    static char[] sort(char[] chars) {
+        int size = chars.length;
+        Collator collator = COLLATOR.get();
+        CollationKey[] sortKeys = new CollationKey[size];
+        for (int i = 0; i < size; i++) {
+            sortKeys[i] = collator.getCollationKey(Character.toString(chars[i]));
+        }
+        Arrays.sort(sortKeys, StrexCollation::compareKeys);
+        char[] result = new char[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = sortKeys[i].getSourceString().charAt(0);
+        }
+        return result;
+    }
+    
+    private static int compareKeys(CollationKey key1, CollationKey key2) {
+        int keyResult = key1.compareTo(key2);
+        if (keyResult != 0) {
+            return keyResult;
+        }
+        
+        return Character.compare(key1.getSourceString().charAt(0), key2.getSourceString().charAt(0));
+    }
+    
+    /**
+     * Sorts the characters of the given ranges by collation.
+     * 
+     * @param rangeStarts the first characters of the ranges, in increasing order
+     * @param rangeEnds the exclusive ends of the ranges, the ranges must not overlap
+     * @return the part containing the sorted characters
+     */
+    static StrexPart sortRanges(char[] rangeStarts, int[] rangeEnds) {
+        int rangeCount = rangeStarts.length;
+        int size = 0;
+        for (int i = 0; i < rangeCount; i++) {
+            size += rangeEnds[i] - rangeStarts[i];
+        }
+        if (size > MAX_DIRECT_SORT_SIZE) {
+            return Table.INSTANCE.sortRanges(rangeStarts, rangeEnds);
+        }
+        
+        char[] chars = new char[size];
+        int position = 0;
+        for (int i = 0; i < rangeCount; i++) {
+            for (int c = rangeStarts[i]; c < rangeEnds[i]; c++) {
+                chars[position] = (char) c;
+                position++;
+            }
+        }
+        return new StrexPart(sort(chars));
+    }
+    
+    /**
+     * Gets the position of the given character in the collation order of all the `char` values.
+     * 
+     * @param c the character
+     * @return the rank of the character
+     */
+    static int rank(char c) {
+        return Table.INSTANCE.rank(c);
+    }
+    
+    
+    private static final class Table {
+    
+        private static final Table INSTANCE = new Table();
+        
+        
+        private final char[] orderStarts;
+        
+        private final int[] orderRanks;
+        
+        private final char[] codeStarts;
+        
+        private final int[] codeRanks;
+        
+        
+        private Table() {
+            int charCount = Character.MAX_VALUE + 1;
+            char[] allChars = new char[charCount];
+            for (int i = 0; i < charCount; i++) {
+                allChars[i] = (char) i;
+            }
+            char[] order = sort(allChars);
+            
+            int runCount = 0;
+            for (int i = 0; i < charCount; i++) {
+                if (i == 0 || order[i] != order[i - 1] + 1) {
+                    runCount++;
+                }
+            }
+            this.orderStarts = new char[runCount];
+            this.orderRanks = new int[runCount + 1];
+            int run = 0;
+            for (int i = 0; i < charCount; i++) {
+                if (i == 0 || order[i] != order[i - 1] + 1) {
+                    orderStarts[run] = order[i];
+                    orderRanks[run] = i;
+                    run++;
+                }
+            }
+            orderRanks[runCount] = charCount;
+            
+            long[] codeSortedRuns = new long[runCount];
+            for (int i = 0; i < runCount; i++) {
+                codeSortedRuns[i] = ((long) orderStarts[i] << 32) | orderRanks[i];
+            }
+            Arrays.sort(codeSortedRuns);
+            this.codeStarts = new char[runCount];
+            this.codeRanks = new int[runCount];
+            for (int i = 0; i < runCount; i++) {
+                codeStarts[i] = (char) (codeSortedRuns[i] >>> 32);
+                codeRanks[i] = (int) codeSortedRuns[i];
+            }
+        }
+        
+        
+        private StrexPart sortRanges(char[] rangeStarts, int[] rangeEnds) {
+            int orderRunCount = orderStarts.length;
+            int rangeCount = rangeStarts.length;
+            char[] runStartsBuilder = new char[orderRunCount + rangeCount];
+            int[] runLengthsBuilder = new int[orderRunCount + rangeCount];
+            int runCount = 0;
+            int previousEnd = -1;
+            for (int orderRun = 0; orderRun < orderRunCount; orderRun++) {
+                int start = orderStarts[orderRun];
+                int end = start + (orderRanks[orderRun + 1] - orderRanks[orderRun]);
+                int searchResult = Arrays.binarySearch(rangeStarts, (char) start);
+                int range = searchResult >= 0 ? searchResult : Math.max(0, 0 - searchResult - 2);
+                for (; range < rangeCount && rangeStarts[range] < end; range++) {
+                    int pieceStart = Math.max(start, rangeStarts[range]);
+                    int pieceEnd = Math.min(end, rangeEnds[range]);
+                    if (pieceStart >= pieceEnd) {
+                        continue;
+                    } else if (pieceStart == previousEnd) {
+                        runLengthsBuilder[runCount - 1] += pieceEnd - pieceStart;
+                    } else {
+                        runStartsBuilder[runCount] = (char) pieceStart;
+                        runLengthsBuilder[runCount] = pieceEnd - pieceStart;
+                        runCount++;
+                    }
+                    previousEnd = pieceEnd;
+                }
+            }
+            return new StrexPart(
+                    Arrays.copyOf(runStartsBuilder, runCount), Arrays.copyOf(runLengthsBuilder, runCount));
+        }
+        
+        private int rank(char c) {
+            int searchResult = Arrays.binarySearch(codeStarts, c);
+            int run = searchResult >= 0 ? searchResult : 0 - searchResult - 2;
+            return codeRanks[run] + (c - codeStarts[run]);
+        }
+    
+    }
+
+}
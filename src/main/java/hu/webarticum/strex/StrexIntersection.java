@@ -0,0 +1,91 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+
+/**
+ * <p>Represents the intersection of two {@link Strex} collections,
+ * with index mapping between the intersection and its inputs.</p>
+ * 
+ * <p>The intersection is sorted in the order of the first collection.
+ * Each mapping decodes and encodes a single string,
+ * so it takes time proportional to the length of the strings.</p>
+ * 
+ * <p>Instances can be obtained via {@link Strex#intersect(Strex)}.</p>
+ */
+public class StrexIntersection {
+
+    private final Strex first;
+    
+    private final Strex second;
+    
+    private final Strex strex;
+    
+    
+    StrexIntersection(Strex first, Strex second, Strex strex) {
+        this.first = first;
+        this.second = second;
+        this.strex = strex;
+    }
+    
+    
+    /**
+     * Gets the collection of the strings contained by both inputs.
+     * 
+     * @return the intersected collection
+     */
+    public Strex strex() {
+        return strex;
+    }
+    
+    /**
+     * Gets the number of strings contained by both inputs.
+     * 
+     * @return the size of the intersection
+     */
+    public BigInteger size() {
+        return strex.size();
+    }
+    
+    /**
+     * Maps an index of the intersection to the index of the same string in the first input.
+     * 
+     * @param index the index in the intersection
+     * @return the index in the first input
+     */
+    public BigInteger toFirstIndex(BigInteger index) {
+        return first.indexOf(strex.get(index));
+    }
+    
+    /**
+     * Maps an index of the intersection to the index of the same string in the second input.
+     * 
+     * @param index the index in the intersection
+     * @return the index in the second input
+     */
+    public BigInteger toSecondIndex(BigInteger index) {
+        return second.indexOf(strex.get(index));
+    }
+    
+    /**
+     * Maps an index of the first input to the index of the same string in the intersection.
+     * 
+     * @param firstIndex the index in the first input
+     * @return the index in the intersection, or a negative number (like {@link Strex#indexOf(String)})
+     *         if the string is not contained by the second input
+     */
+    public BigInteger fromFirstIndex(BigInteger firstIndex) {
+        return strex.indexOf(first.get(firstIndex));
+    }
+    
+    /**
+     * Maps an index of the second input to the index of the same string in the intersection.
+     * 
+     * @param secondIndex the index in the second input
+     * @return the index in the intersection, or a negative number (like {@link Strex#indexOf(String)})
+     *         if the string is not contained by the first input
+     */
+    public BigInteger fromSecondIndex(BigInteger secondIndex) {
+        return strex.indexOf(second.get(secondIndex));
+    }
+
+}
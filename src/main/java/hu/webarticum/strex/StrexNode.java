@@ -0,0 +1,167 @@
+package hu.webarticum.strex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node of the syntax tree of a parsed pattern.
+ * 
+ * <p>A node is either a character set, a sequence of other nodes or an alternation of other nodes,
+ * repeated between a minimum and a maximum number of times.
+ * Character sets are stored as compact {@link StrexPart} objects.</p>
+ */
+final class StrexNode {
+
+    enum Kind { CHARS, SEQUENCE, ALTERNATION }
+    
+    
+    private final Kind kind;
+    
+    private final StrexPart part;
+    
+    private final List<StrexNode> children;
+    
+    private final int minRepeat;
+    
+    private final int maxRepeat;
+    
+    
+    private StrexNode(Kind kind, StrexPart part, List<StrexNode> children, int minRepeat, int maxRepeat) {
+        this.kind = kind;
+        this.part = part;
+        this.children = children;
+        this.minRepeat = minRepeat;
+        this.maxRepeat = maxRepeat;
+    }
+    
+    static StrexNode chars(StrexPart part, int minRepeat, int maxRepeat) {
+        return new StrexNode(Kind.CHARS, part, Collections.emptyList(), minRepeat, maxRepeat);
+    }
+    
+    static StrexNode sequence(List<StrexNode> children) {
+        return new StrexNode(Kind.SEQUENCE, null, Collections.unmodifiableList(new ArrayList<>(children)), 1, 1);
+    }
+    
+    static StrexNode alternation(List<StrexNode> children) {
+        return new StrexNode(Kind.ALTERNATION, null, Collections.unmodifiableList(new ArrayList<>(children)), 1, 1);
+    }
+    
+    /**
+     * Rebuilds a simple product from its segments.
+     * 
+     * <p>The result shares the parts of the segments, so it is cheap to create.</p>
+     * 
+     * @param segments the segments of the product
+     * @return the node describing the same strings
+     * @see #toSegments()
+     */
+    static StrexNode fromSegments(List<StrexSegment> segments) {
+        List<StrexNode> children = new ArrayList<>(segments.size());
+        for (StrexSegment segment : segments) {
+            int repeat = segment.repeat();
+            if (segment.part() != null) {
+                children.add(chars(segment.part(), repeat, repeat));
+            } else {
+                children.add(fromSegments(segment.unit()).withRepeat(repeat, repeat));
+            }
+        }
+        return sequence(children);
+    }
+    
+    StrexNode withRepeat(int minRepeat, int maxRepeat) {
+        return new StrexNode(kind, part, children, minRepeat, maxRepeat);
+    }
+    
+    
+    Kind kind() {
+        return kind;
+    }
+    
+    StrexPart part() {
+        return part;
+    }
+    
+    List<StrexNode> children() {
+        return children;
+    }
+    
+    int minRepeat() {
+        return minRepeat;
+    }
+    
+    int maxRepeat() {
+        return maxRepeat;
+    }
+    
+    /**
+     * Checks whether this node describes a simple product of character sets,
+     * which is a possibly nested sequence of character sets with fixed repeat counts.
+     * 
+     * @return `true` if this node is a simple product, `false` otherwise
+     */
+    boolean isProduct() {
+        if (minRepeat != maxRepeat || kind == Kind.ALTERNATION) {
+            return false;
+        }
+        
+        for (StrexNode child : children) {
+            if (!child.isProduct()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Converts this simple product to segments.
+     * 
+     * <p>Nested sequences are flattened, a repeated group becomes a single segment
+     * that holds the segments of one repetition and the repeat count.</p>
+     * 
+     * @return the list of segments
+     * @see #isProduct()
+     */
+    List<StrexSegment> toSegments() {
+        List<StrexSegment> result = new ArrayList<>(children.size());
+        for (StrexNode child : children) {
+            child.collectSegments(result);
+        }
+        return result;
+    }
+    
+    private void collectSegments(List<StrexSegment> result) {
+        if (kind == Kind.CHARS) {
+            result.add(new StrexSegment(part, minRepeat));
+            return;
+        }
+        
+        if (minRepeat == 0) {
+            return;
+        }
+        
+        List<StrexSegment> childSegments = toSegments();
+        if (minRepeat == 1) {
+            result.addAll(childSegments);
+        } else if (childSegments.size() == 1 && childSegments.get(0).part() != null) {
+            StrexSegment childSegment = childSegments.get(0);
+            long repeat = (long) childSegment.repeat() * minRepeat;
+            if (repeat > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Pattern is too long");
+            }
+            result.add(new StrexSegment(childSegment.part(), (int) repeat));
+        } else if (hasWidth(childSegments)) {
+            result.add(new StrexSegment(childSegments, minRepeat));
+        }
+    }
+    
+    private static boolean hasWidth(List<StrexSegment> segments) {
+        for (StrexSegment segment : segments) {
+            if (segment.width() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
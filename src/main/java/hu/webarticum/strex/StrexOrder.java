@@ -0,0 +1,21 @@
+package hu.webarticum.strex;
+
+/**
+ * Order of the strings in a {@link Strex} collection.
+ * 
+ * <p>Characters are always compared by collation (ties broken by char code),
+ * the orders differ only in how strings with different lengths are compared.</p>
+ */
+public enum StrexOrder {
+
+    /**
+     * Alphabetical order, a string precedes all of its extensions.
+     */
+    LEXICOGRAPHIC,
+    
+    /**
+     * Shorter strings come first, strings with the same length are in alphabetical order.
+     */
+    SHORTLEX
+
+}
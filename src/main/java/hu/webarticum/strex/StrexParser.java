@@ -0,0 +1,411 @@
+package hu.webarticum.strex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Single-pass recursive descent parser for the supported subset of regular expressions.
+ * 
+ * <p>The parser reads the pattern char by char, and builds the syntax tree directly,
+ * without intermediate strings.
+ * Character classes are collected as ranges, so their cost depends on the number of ranges,
+ * not on the number of characters.
+ * Invalid input is reported with a {@link PatternSyntaxException} containing the error offset.</p>
+ */
+final class StrexParser {
+
+    private final String pattern;
+    
+    private final int length;
+    
+    private final int end;
+    
+    private int position = 0;
+    
+    private int minRepeat = 1;
+    
+    private int maxRepeat = 1;
+    
+    
+    private StrexParser(String pattern) {
+        this.pattern = pattern;
+        this.length = pattern.length();
+        this.end = findEndAnchor(pattern);
+    }
+    
+    private static int findEndAnchor(String pattern) {
+        int result = pattern.length();
+        while (result > 0 && pattern.charAt(result - 1) == '$') {
+            result--;
+        }
+        
+        int backslashCount = 0;
+        while (result - backslashCount > 0 && pattern.charAt(result - backslashCount - 1) == '\\') {
+            backslashCount++;
+        }
+        if (backslashCount % 2 == 1 && result < pattern.length()) {
+            result++;
+        }
+        return result;
+    }
+    
+    
+    static StrexNode parse(String pattern) {
+        return new StrexParser(pattern).parsePattern();
+    }
+    
+    private StrexNode parsePattern() {
+        while (position < end && pattern.charAt(position) == '^') {
+            position++;
+        }
+        
+        StrexNode result = parseAlternation();
+        if (position < end) {
+            throw new PatternSyntaxException("Unmatched closing ')'", pattern, position);
+        }
+        return result;
+    }
+    
+    private StrexNode parseAlternation() {
+        List<StrexNode> alternatives = new ArrayList<>();
+        alternatives.add(parseSequence());
+        while (position < end && pattern.charAt(position) == '|') {
+            position++;
+            alternatives.add(parseSequence());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : StrexNode.alternation(alternatives);
+    }
+    
+    private StrexNode parseSequence() {
+        List<StrexNode> items = new ArrayList<>();
+        while (position < end) {
+            char c = pattern.charAt(position);
+            if (c == '|' || c == ')') {
+                break;
+            }
+            
+            items.add(parseItem());
+        }
+        return StrexNode.sequence(items);
+    }
+    
+    private StrexNode parseItem() {
+        if (pattern.charAt(position) != '(') {
+            StrexPart part = parseAtom();
+            parseQuantifier();
+            return StrexNode.chars(part, minRepeat, maxRepeat);
+        }
+        
+        int groupStart = position;
+        position++;
+        if (position < end && pattern.charAt(position) == '?') {
+            if (position + 1 >= end || pattern.charAt(position + 1) != ':') {
+                throw new PatternSyntaxException("Unsupported group construct", pattern, groupStart);
+            }
+            
+            position += 2;
+        }
+        StrexNode content = parseAlternation();
+        if (position >= end) {
+            throw new PatternSyntaxException("Unclosed group", pattern, groupStart);
+        }
+        
+        position++;
+        parseQuantifier();
+        return content.withRepeat(minRepeat, maxRepeat);
+    }
+    
+    private StrexPart parseAtom() {
+        int atomStart = position;
+        char c = pattern.charAt(position);
+        position++;
+        if (c == '\\') {
+            return new StrexPart(parseEscaped(nextEscapedChar(atomStart)));
+        } else if (c == '[') {
+            return parseSet(atomStart);
+        } else {
+            return new StrexPart(parseNonEscaped(c, atomStart));
+        }
+    }
+    
+    private char nextEscapedChar(int escapeStart) {
+        if (position >= length) {
+            throw new PatternSyntaxException("Unterminated escape sequence", pattern, escapeStart);
+        }
+        
+        char result = pattern.charAt(position);
+        position++;
+        return result;
+    }
+    
+    private void parseQuantifier() {
+        minRepeat = 1;
+        maxRepeat = 1;
+        if (position >= length) {
+            return;
+        }
+        
+        char c = pattern.charAt(position);
+        if (c == '?') {
+            minRepeat = 0;
+            position++;
+            return;
+        } else if (c != '{') {
+            return;
+        }
+        
+        int quantifierStart = position;
+        int minEnd = skipDigits(position + 1);
+        if (minEnd == position + 1 || minEnd >= length) {
+            return;
+        }
+        
+        int min = parseNumber(position + 1, minEnd);
+        int max = min;
+        int end = minEnd;
+        if (pattern.charAt(end) == ',') {
+            int maxEnd = skipDigits(end + 1);
+            if (maxEnd >= length || pattern.charAt(maxEnd) != '}') {
+                return;
+            } else if (maxEnd == end + 1) {
+                throw new PatternSyntaxException("Unbounded quantifier", pattern, quantifierStart);
+            }
+            
+            max = parseNumber(end + 1, maxEnd);
+            end = maxEnd;
+        }
+        if (pattern.charAt(end) != '}') {
+            return;
+        } else if (max < min) {
+            throw new PatternSyntaxException("Illegal repetition range", pattern, quantifierStart);
+        }
+        
+        minRepeat = min;
+        maxRepeat = max;
+        position = end + 1;
+    }
+    
+    private int skipDigits(int start) {
+        int end = start;
+        while (end < length && isDigit(pattern.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+    
+    private int parseNumber(int start, int end) {
+        long value = 0L;
+        for (int i = start; i < end; i++) {
+            value = (value * 10) + (pattern.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new PatternSyntaxException("Too large quantifier", pattern, start);
+            }
+        }
+        return (int) value;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private StrexPart parseSet(int setStart) {
+        boolean negated = false;
+        if (position + 1 < length && pattern.charAt(position) == '^' && pattern.charAt(position + 1) != ']') {
+            negated = true;
+            position++;
+        }
+        
+        List<int[]> ranges = new ArrayList<>();
+        char[] previousItem = null;
+        boolean inRange = false;
+        boolean atStart = true;
+        while (true) {
+            if (position >= length) {
+                throw new PatternSyntaxException("Unclosed character class", pattern, setStart);
+            }
+            
+            int itemStart = position;
+            char c = pattern.charAt(position);
+            position++;
+            if (c == ']') {
+                if (atStart) {
+                    throw new PatternSyntaxException("Empty character class", pattern, setStart);
+                }
+                break;
+            }
+            
+            boolean escaped = c == '\\';
+            if (escaped) {
+                c = nextEscapedChar(itemStart);
+            }
+            if (!escaped && c == '-') {
+                boolean atEnd = position < length && pattern.charAt(position) == ']';
+                if (atStart) {
+                    previousItem = new char[] { '-' };
+                } else if (atEnd && !inRange) {
+                    if (previousItem != null) {
+                        addAll(ranges, previousItem);
+                    }
+                    previousItem = new char[] { '-' };
+                } else if (previousItem == null || previousItem.length != 1 || inRange) {
+                    throw new PatternSyntaxException("Illegal range definition in character class", pattern, itemStart);
+                } else {
+                    inRange = true;
+                }
+            } else {
+                char[] chars = escaped ? parseEscaped(c) : new char[] { c };
+                if (inRange) {
+                    if (chars.length != 1) {
+                        throw new PatternSyntaxException(
+                                "Illegal range definition in character class", pattern, itemStart);
+                    } else if (chars[0] < previousItem[0]) {
+                        throw new PatternSyntaxException(
+                                "Illegal character range (end is greater)", pattern, itemStart);
+                    }
+                    ranges.add(new int[] { previousItem[0], chars[0] + 1 });
+                    previousItem = null;
+                    inRange = false;
+                } else {
+                    if (previousItem != null) {
+                        addAll(ranges, previousItem);
+                    }
+                    previousItem = chars;
+                }
+            }
+            atStart = false;
+        }
+        if (previousItem != null) {
+            addAll(ranges, previousItem);
+        }
+        
+        List<int[]> mergedRanges = mergeRanges(ranges);
+        int rangeCount = mergedRanges.size();
+        char[] rangeStarts = new char[rangeCount];
+        int[] rangeEnds = new int[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            rangeStarts[i] = (char) mergedRanges.get(i)[0];
+            rangeEnds[i] = mergedRanges.get(i)[1];
+        }
+        return negated ? negate(rangeStarts, rangeEnds) : StrexCollation.sortRanges(rangeStarts, rangeEnds);
+    }
+    
+    private static void addAll(List<int[]> ranges, char[] chars) {
+        for (char c : chars) {
+            ranges.add(new int[] { c, c + 1 });
+        }
+    }
+    
+    private static List<int[]> mergeRanges(List<int[]> ranges) {
+        List<int[]> sortedRanges = new ArrayList<>(ranges);
+        sortedRanges.sort(Comparator.comparingInt(range -> range[0]));
+        List<int[]> result = new ArrayList<>();
+        int[] lastRange = null;
+        for (int[] range : sortedRanges) {
+            if (lastRange != null && range[0] <= lastRange[1]) {
+                lastRange[1] = Math.max(lastRange[1], range[1]);
+            } else {
+                lastRange = range.clone();
+                result.add(lastRange);
+            }
+        }
+        return result;
+    }
+    
+    private static StrexPart negate(char[] rangeStarts, int[] rangeEnds) {
+        char[] dotChars = dotChars();
+        char[] resultBuilder = new char[dotChars.length];
+        int size = 0;
+        for (char dotChar : dotChars) {
+            int searchResult = Arrays.binarySearch(rangeStarts, dotChar);
+            int range = searchResult >= 0 ? searchResult : 0 - searchResult - 2;
+            if (range < 0 || dotChar >= rangeEnds[range]) {
+                resultBuilder[size] = dotChar;
+                size++;
+            }
+        }
+        return new StrexPart(Arrays.copyOf(resultBuilder, size));
+    }
+    
+    private char[] parseNonEscaped(char c, int atomStart) {
+        if ("?+*".indexOf(c) != -1) {
+            throw new PatternSyntaxException("Unsupported construct: " + c, pattern, atomStart);
+        } else if (c == '.') {
+            return dotChars();
+        } else {
+            return new char[] { c };
+        }
+    }
+    
+    private static char[] dotChars() {
+        return new char[] {
+                ' ', '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
+                '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
+                '[', '\\', ']', '^', '_', '`', '{', '|', '}', '~', '$',
+                '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+                'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
+                'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
+                'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
+                's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
+                'y', 'Y', 'z', 'Z',
+        };
+    }
+    
+    private static char[] parseEscaped(char c) {
+        if (c == 's') {
+            return new char[] { '\t', ' ' };
+        } else if (c == 'S') {
+            return new char[] {
+                    '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
+                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
+                    '[', '\\', ']', '^', '_', '`', '{', '|', '}', '~', '$',
+                    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
+                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
+                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
+                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
+                    'y', 'Y', 'z', 'Z',
+            };
+        } else if (c == 'w') {
+            return new char[] {
+                    '_',
+                    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
+                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
+                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
+                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
+                    'y', 'Y', 'z', 'Z',
+            };
+        } else if (c == 'W') {
+            return new char[] {
+                    ' ', '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
+                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
+                    '[', '\\', ']', '^', '`', '{', '|', '}', '~', '$',
+            };
+        } else if (c == 'd') {
+            return new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
+        } else if (c == 'D') {
+            return new char[] {
+                    ' ', '!', '"', '#', '%', '&', '\'', '(', ')', '*', '+', ',',
+                    '-', '.', '/', ':', ';', '<', '=', '>', '?', '@',
+                    '[', '\\', ']', '^', '_', '`', '{', '|', '}', '~', '$',
+                    'a', 'A', 'b', 'B', 'c', 'C', 'd', 'D', 'e', 'E', 'f', 'F',
+                    'g', 'G', 'h', 'H', 'i', 'I', 'j', 'J', 'k', 'K', 'l', 'L',
+                    'm', 'M', 'n', 'N', 'o', 'O', 'p', 'P', 'q', 'Q', 'r', 'R',
+                    's', 'S', 't', 'T', 'u', 'U', 'v', 'V', 'w', 'W', 'x', 'X',
+                    'y', 'Y', 'z', 'Z',
+            };
+        } else if (c == 't') {
+            return new char[] { '\t' };
+        } else if (c == 'n') {
+            return new char[] { '\n' };
+        } else if (c == 'r') {
+            return new char[] { '\r' };
+        } else {
+            return new char[] { c };
+        }
+    }
+
+}
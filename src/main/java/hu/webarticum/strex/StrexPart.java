@@ -0,0 +1,250 @@
+package hu.webarticum.strex;
+
+import java.util.Arrays;
+
+/**
+ * Ordered set of characters that can occur at a given position of the pattern.
+ * 
+ * <p>The characters are stored as runs of consecutive character codes,
+ * in their generation order, with a prefix-count table.
+ * So the memory used is proportional to the number of runs, not to the number of characters.</p>
+ * 
+ * <p>Lookup tables are precomputed, so queries do not need to allocate or to run the collation algorithm.
+ * If the characters are not too sparse, a dense table covering their code range
+ * provides the position of any contained character in constant time,
+ * otherwise the code-ordered runs are binary searched.
+ * The insertion point of an absent character is binary searched by comparing collation ranks
+ * (see {@link StrexCollation#rank(char)}).
+ * Instances are immutable and safe for concurrent use.</p>
+ */
+final class StrexPart {
+
+    private static final int MIN_DENSE_SPAN = 256;
+    
+    private static final int DENSE_SPAN_PER_RUN = 8;
+    
+    
+    private final int size;
+    
+    private final char[] runStarts;
+    
+    private final int[] runPositions;
+    
+    private final char[] lookupStarts;
+    
+    private final int[] lookupRuns;
+    
+    private final char denseLookupOffset;
+    
+    private final int[] denseLookup;
+    
+    
+    StrexPart(char[] chars) {
+        this(runStartsOf(chars), runPositionsOf(chars), chars.length);
+    }
+    
+    /**
+     * Creates a part from runs of consecutive character codes.
+     * 
+     * @param runStarts the first characters of the runs, in generation order
+     * @param runLengths the lengths of the runs
+     */
+    StrexPart(char[] runStarts, int[] runLengths) {
+        this(runStarts, runPositionsOf(runLengths), sum(runLengths));
+    }
+    
+    private StrexPart(char[] runStarts, int[] runPositions, int size) {
+        this.size = size;
+        this.runStarts = runStarts;
+        this.runPositions = runPositions;
+        int runCount = runStarts.length;
+        
+        this.lookupStarts = runStarts.clone();
+        Arrays.sort(lookupStarts);
+        this.lookupRuns = new int[runCount];
+        for (int i = 0; i < runCount; i++) {
+            lookupRuns[Arrays.binarySearch(lookupStarts, runStarts[i])] = i;
+        }
+        
+        int span = runCount > 0 ? lookupEnd(runCount - 1) - lookupStarts[0] : 0;
+        if (size > 0 && span <= Math.max(MIN_DENSE_SPAN, runCount * DENSE_SPAN_PER_RUN)) {
+            this.denseLookupOffset = lookupStarts[0];
+            this.denseLookup = createDenseLookup(span);
+        } else {
+            this.denseLookupOffset = 0;
+            this.denseLookup = null;
+        }
+    }
+    
+    private static char[] runStartsOf(char[] chars) {
+        int size = chars.length;
+        char[] resultBuilder = new char[size];
+        int runCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || chars[i] != chars[i - 1] + 1) {
+                resultBuilder[runCount] = chars[i];
+                runCount++;
+            }
+        }
+        return Arrays.copyOf(resultBuilder, runCount);
+    }
+    
+    private static int[] runPositionsOf(char[] chars) {
+        int size = chars.length;
+        int[] resultBuilder = new int[size];
+        int runCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || chars[i] != chars[i - 1] + 1) {
+                resultBuilder[runCount] = i;
+                runCount++;
+            }
+        }
+        return Arrays.copyOf(resultBuilder, runCount);
+    }
+    
+    private static int[] runPositionsOf(int[] runLengths) {
+        int runCount = runLengths.length;
+        int[] result = new int[runCount];
+        int position = 0;
+        for (int i = 0; i < runCount; i++) {
+            result[i] = position;
+            position += runLengths[i];
+        }
+        return result;
+    }
+    
+    private static int sum(int[] values) {
+        int result = 0;
+        for (int value : values) {
+            result += value;
+        }
+        return result;
+    }
+    
+    private int[] createDenseLookup(int span) {
+        int[] result = new int[span];
+        Arrays.fill(result, -1);
+        int runCount = runStarts.length;
+        for (int run = 0; run < runCount; run++) {
+            int runEndPosition = run + 1 < runCount ? runPositions[run + 1] : size;
+            int offset = runStarts[run] - denseLookupOffset;
+            for (int position = runPositions[run]; position < runEndPosition; position++) {
+                result[offset] = position;
+                offset++;
+            }
+        }
+        return result;
+    }
+    
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Gets the character with the greatest code in this part.
+     * 
+     * @return the greatest character, or `0` if this part is empty
+     */
+    char maxChar() {
+        int runCount = lookupStarts.length;
+        return runCount > 0 ? (char) (lookupEnd(runCount - 1) - 1) : 0;
+    }
+    
+    /**
+     * Materializes the characters of this part.
+     * 
+     * @return the characters, in generation order
+     */
+    char[] toChars() {
+        char[] result = new char[size];
+        int runCount = runStarts.length;
+        for (int run = 0; run < runCount; run++) {
+            int runEndPosition = run + 1 < runCount ? runPositions[run + 1] : size;
+            char c = runStarts[run];
+            for (int position = runPositions[run]; position < runEndPosition; position++) {
+                result[position] = c;
+                c++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Collects the characters of this part that are also contained by the other part.
+     * 
+     * @param other the other part
+     * @return the common characters, in the order of this part
+     */
+    char[] intersection(StrexPart other) {
+        char[] resultBuilder = new char[size];
+        int resultSize = 0;
+        for (int position = 0; position < size; position++) {
+            char c = charAt(position);
+            if (other.indexOf(c) >= 0) {
+                resultBuilder[resultSize] = c;
+                resultSize++;
+            }
+        }
+        return Arrays.copyOf(resultBuilder, resultSize);
+    }
+    
+    char charAt(int position) {
+        if (runStarts.length == 1) {
+            return (char) (runStarts[0] + position);
+        }
+        
+        int run = Arrays.binarySearch(runPositions, position);
+        if (run < 0) {
+            run = 0 - run - 2;
+        }
+        return (char) (runStarts[run] + (position - runPositions[run]));
+    }
+    
+    /**
+     * Finds the position of the given character,
+     * or, if not found, the (-1)-based insertion point (like {@link Arrays#binarySearch(char[], char)}.
+     * 
+     * @param c the character to find
+     * @return the position of the character or a negative number
+     */
+    int indexOf(char c) {
+        if (denseLookup != null) {
+            int offset = c - denseLookupOffset;
+            if (offset >= 0 && offset < denseLookup.length && denseLookup[offset] >= 0) {
+                return denseLookup[offset];
+            }
+        } else {
+            int lookupResult = Arrays.binarySearch(lookupStarts, c);
+            int lookupIndex = lookupResult >= 0 ? lookupResult : 0 - lookupResult - 2;
+            if (lookupIndex >= 0 && c < lookupEnd(lookupIndex)) {
+                int run = lookupRuns[lookupIndex];
+                return runPositions[run] + (c - runStarts[run]);
+            }
+        }
+        
+        return insertionPoint(c);
+    }
+    
+    private int insertionPoint(char c) {
+        int rank = StrexCollation.rank(c);
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (StrexCollation.rank(charAt(mid)) < rank) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return 0 - low - 1;
+    }
+    
+    private int lookupEnd(int lookupIndex) {
+        int run = lookupRuns[lookupIndex];
+        int runEndPosition = run + 1 < runPositions.length ? runPositions[run + 1] : size;
+        return runStarts[run] + (runEndPosition - runPositions[run]);
+    }
+
+}
@@ -0,0 +1,264 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+
+/**
+ * <p>Represents a seeded, invertible pseudo-random permutation of a {@link Strex} collection.</p>
+ * 
+ * <p>Row numbers are mapped to indices of the underlying collection
+ * via a balanced Feistel network over the smallest sufficient power of two,
+ * and by cycle walking until the result falls into the index range.
+ * So unique, random-looking strings can be generated by row number,
+ * and the row number of a string can be found in constant time
+ * (linear in the pattern length).
+ * If the size fits in a `long`, no `BigInteger` calculation is needed.</p>
+ * 
+ * <p>Instances can be obtained via {@link Strex#permutation(long)}.</p>
+ * 
+ * <p>Example of use:</p>
+ * 
+ * <pre>
+ * StrexPermutation permutation = Strex.compile("\\d{3}").permutation(42);
+ * String value = permutation.get(0);
+ * System.out.println(permutation.indexOf(value)); // 0
+ * </pre>
+ */
+public class StrexPermutation {
+
+    private static final int ROUNDS = 6;
+    
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    private static final BigInteger UNSIGNED_LONG_MASK = BigInteger.ONE.shiftLeft(Long.SIZE).subtract(BigInteger.ONE);
+    
+    
+    private final Strex strex;
+    
+    private final long seed;
+    
+    private final BigInteger size;
+    
+    private final long longSize;
+    
+    private final int halfBits;
+    
+    private final long halfMask;
+    
+    private final BigInteger bigHalfMask;
+    
+    private final long[] roundKeys;
+    
+    
+    StrexPermutation(Strex strex, long seed) {
+        this.strex = strex;
+        this.seed = seed;
+        this.size = strex.size();
+        this.longSize = size.bitLength() < Long.SIZE ? size.longValue() : -1L;
+        int bits = size.compareTo(BigInteger.ONE) > 0 ? size.subtract(BigInteger.ONE).bitLength() : 0;
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = halfBits < Long.SIZE ? (1L << halfBits) - 1 : -1L;
+        this.bigHalfMask = BigInteger.ONE.shiftLeft(halfBits).subtract(BigInteger.ONE);
+        this.roundKeys = new long[ROUNDS];
+        long state = seed;
+        for (int i = 0; i < ROUNDS; i++) {
+            state += GOLDEN_GAMMA;
+            roundKeys[i] = mix(state);
+        }
+    }
+    
+    
+    /**
+     * Gets the underlying `Strex` collection.
+     * 
+     * @return the underlying collection
+     */
+    public Strex strex() {
+        return strex;
+    }
+    
+    /**
+     * Gets the seed of this permutation.
+     * 
+     * @return the seed
+     */
+    public long seed() {
+        return seed;
+    }
+    
+    /**
+     * Gets the number of rows, which is equal to the size of the underlying collection.
+     * 
+     * @return the number of rows
+     */
+    public BigInteger size() {
+        return size;
+    }
+    
+    /**
+     * Gets the string at the given row of this permutation.
+     * 
+     * @param row the row number as a `long` value
+     * @return the string at the given row
+     */
+    public String get(long row) {
+        if (longSize < 0) {
+            return get(BigInteger.valueOf(row));
+        }
+        
+        if (row < 0 || row >= longSize) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + row + "(size: " + size + ")");
+        }
+        
+        return strex.get(permute(row));
+    }
+    
+    /**
+     * Gets the string at the given row of this permutation.
+     * 
+     * @param row the row number as a `BigInteger` instance
+     * @return the string at the given row
+     */
+    public String get(BigInteger row) {
+        if (row.signum() < 0 || row.compareTo(size) >= 0) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + row + "(size: " + size + ")");
+        }
+        
+        if (longSize >= 0) {
+            return strex.get(permute(row.longValue()));
+        }
+        
+        return strex.get(permute(row));
+    }
+    
+    /**
+     * Finds the row number of the given string in this permutation.
+     * 
+     * @param text the string to find
+     * @return the row number of the string, or `null` if not found
+     */
+    public BigInteger indexOf(String text) {
+        if (longSize >= 0) {
+            long index = strex.indexOfLong(text);
+            return index >= 0 ? BigInteger.valueOf(unpermute(index)) : null;
+        }
+        
+        BigInteger index = strex.indexOf(text);
+        return index.signum() >= 0 ? unpermute(index) : null;
+    }
+    
+    /**
+     * Maps the given row number to an index of the underlying collection.
+     * 
+     * @param row the row number
+     * @return the index in the underlying collection
+     */
+    long permute(long row) {
+        long value = row;
+        do {
+            value = encrypt(value);
+        } while (Long.compareUnsigned(value, longSize) >= 0);
+        return value;
+    }
+    
+    /**
+     * Maps the given index of the underlying collection back to its row number.
+     * 
+     * @param index the index in the underlying collection
+     * @return the row number
+     */
+    long unpermute(long index) {
+        long value = index;
+        do {
+            value = decrypt(value);
+        } while (Long.compareUnsigned(value, longSize) >= 0);
+        return value;
+    }
+    
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long newRight = left ^ (mix(right ^ roundKeys[i]) & halfMask);
+            left = right;
+            right = newRight;
+        }
+        return (left << halfBits) | right;
+    }
+    
+    private long decrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long newLeft = right ^ (mix(left ^ roundKeys[i]) & halfMask);
+            right = left;
+            left = newLeft;
+        }
+        return (left << halfBits) | right;
+    }
+    
+    BigInteger permute(BigInteger row) {
+        BigInteger value = row;
+        do {
+            value = encrypt(value);
+        } while (value.compareTo(size) >= 0);
+        return value;
+    }
+    
+    BigInteger unpermute(BigInteger index) {
+        BigInteger value = index;
+        do {
+            value = decrypt(value);
+        } while (value.compareTo(size) >= 0);
+        return value;
+    }
+    
+    private BigInteger encrypt(BigInteger value) {
+        BigInteger left = value.shiftRight(halfBits);
+        BigInteger right = value.and(bigHalfMask);
+        for (int i = 0; i < ROUNDS; i++) {
+            BigInteger newRight = left.xor(roundFunction(right, roundKeys[i]));
+            left = right;
+            right = newRight;
+        }
+        return left.shiftLeft(halfBits).or(right);
+    }
+    
+    private BigInteger decrypt(BigInteger value) {
+        BigInteger left = value.shiftRight(halfBits);
+        BigInteger right = value.and(bigHalfMask);
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            BigInteger newLeft = right.xor(roundFunction(left, roundKeys[i]));
+            right = left;
+            left = newLeft;
+        }
+        return left.shiftLeft(halfBits).or(right);
+    }
+    
+    private BigInteger roundFunction(BigInteger half, long key) {
+        long hash = key;
+        for (int shift = 0; shift < halfBits; shift += Long.SIZE) {
+            hash = mix(hash ^ half.shiftRight(shift).longValue());
+        }
+        BigInteger result = BigInteger.ZERO;
+        long state = hash;
+        for (int shift = 0; shift < halfBits; shift += Long.SIZE) {
+            state += GOLDEN_GAMMA;
+            BigInteger word = BigInteger.valueOf(mix(state)).and(UNSIGNED_LONG_MASK);
+            result = result.or(word.shiftLeft(shift));
+        }
+        return result.and(bigHalfMask);
+    }
+    
+    private static long mix(long value) {
+        long result = value;
+        result = (result ^ (result >>> 30)) * 0xBF58476D1CE4E5B9L;
+        result = (result ^ (result >>> 27)) * 0x94D049BB133111EBL;
+        return result ^ (result >>> 31);
+    }
+    
+    @Override
+    public String toString() {
+        return "StrexPermutation[seed: " + seed + ", size: " + size + "]";
+    }
+
+}
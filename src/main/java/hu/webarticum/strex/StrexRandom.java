@@ -0,0 +1,69 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Unbiased bounded random numbers drawn from a source of uniform 64-bit values.
+ * 
+ * <p>Both {@link java.util.Random} and {@link java.util.SplittableRandom} can serve as a source,
+ * so the same algorithms can be used for both.</p>
+ */
+final class StrexRandom {
+
+    private StrexRandom() {
+        // utility class
+    }
+    
+    
+    /**
+     * Draws a uniformly distributed value in the range `[0, bound)`.
+     * 
+     * <p>Uses rejection, so there is no modulo bias.</p>
+     * 
+     * @param source the source of uniform 64-bit values
+     * @param bound the exclusive upper bound, must be positive
+     * @return the random value
+     */
+    static long nextLong(LongSupplier source, long bound) {
+        long mask = bound - 1;
+        long value = source.getAsLong() >>> 1;
+        if ((bound & mask) == 0L) {
+            return value & mask;
+        }
+        
+        for (long unsigned = value; unsigned - (value = unsigned % bound) + mask < 0L; ) {
+            unsigned = source.getAsLong() >>> 1;
+        }
+        return value;
+    }
+    
+    /**
+     * Draws a uniformly distributed value in the range `[0, bound)`.
+     * 
+     * @param source the source of uniform 64-bit values
+     * @param bound the exclusive upper bound, must be positive
+     * @return the random value
+     */
+    static BigInteger nextBigInteger(LongSupplier source, BigInteger bound) {
+        if (bound.bitLength() < Long.SIZE) {
+            return BigInteger.valueOf(nextLong(source, bound.longValue()));
+        }
+        
+        int bitLength = bound.bitLength();
+        int wordCount = (bitLength + Long.SIZE - 1) / Long.SIZE;
+        byte[] bytes = new byte[(wordCount * Long.BYTES) + 1];
+        BigInteger result;
+        do {
+            for (int i = 0; i < wordCount; i++) {
+                long word = source.getAsLong();
+                for (int j = 0; j < Long.BYTES; j++) {
+                    bytes[1 + (i * Long.BYTES) + j] = (byte) (word >>> (j * Byte.SIZE));
+                }
+            }
+            result = new BigInteger(bytes).shiftRight((wordCount * Long.SIZE) - bitLength);
+        } while (result.compareTo(bound) >= 0);
+        return result;
+    }
+
+}
@@ -0,0 +1,142 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Represents a lazy view of a contiguous index range of a {@link Strex} collection.</p>
+ * 
+ * <p>Instances can be obtained via {@link Strex#range(BigInteger, BigInteger)}.</p>
+ */
+public class StrexRange implements Iterable<String> {
+
+    private final Strex strex;
+    
+    private final BigInteger from;
+    
+    private final BigInteger to;
+    
+    
+    StrexRange(Strex strex, BigInteger from, BigInteger to) {
+        this.strex = strex;
+        this.from = from;
+        this.to = to;
+    }
+    
+    
+    /**
+     * Gets the underlying `Strex` collection.
+     * 
+     * @return the underlying collection
+     */
+    public Strex strex() {
+        return strex;
+    }
+    
+    /**
+     * Gets the start of this range in the underlying collection.
+     * 
+     * @return the index of the first string (inclusive)
+     */
+    public BigInteger from() {
+        return from;
+    }
+    
+    /**
+     * Gets the end of this range in the underlying collection.
+     * 
+     * @return the end of the range (exclusive)
+     */
+    public BigInteger to() {
+        return to;
+    }
+    
+    /**
+     * Gets the number of strings in this range.
+     * 
+     * @return the size of this range
+     */
+    public BigInteger size() {
+        return to.subtract(from);
+    }
+    
+    /**
+     * Checks whether this range contains no strings.
+     * 
+     * @return `true` if this range is empty, `false` otherwise
+     */
+    public boolean isEmpty() {
+        return from.equals(to);
+    }
+    
+    /**
+     * Gets the nth string of this range, in alphabetical order.
+     * 
+     * @param index index of the output string relative to the start of this range
+     * @return the nth string of this range
+     */
+    public String get(long index) {
+        return get(BigInteger.valueOf(index));
+    }
+    
+    /**
+     * Gets the nth string of this range, in alphabetical order.
+     * 
+     * @param index index of the output string relative to the start of this range
+     * @return the nth string of this range
+     */
+    public String get(BigInteger index) {
+        if (index.compareTo(BigInteger.ZERO) < 0 || index.compareTo(size()) >= 0) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + index + "(size: " + size() + ")");
+        }
+        
+        return strex.get(from.add(index));
+    }
+    
+    /**
+     * Creates an iterator that iterates through the strings of this range in alphabetical order.
+     * 
+     * @return the string iterator
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return strex.iterator(from, to);
+    }
+    
+    /**
+     * Creates a spliterator over the strings of this range in alphabetical order.
+     * 
+     * @return the string spliterator
+     */
+    @Override
+    public Spliterator<String> spliterator() {
+        return strex.spliterator(from, to);
+    }
+    
+    /**
+     * Creates a sequential stream of the strings of this range in alphabetical order.
+     * 
+     * @return the stream of strings
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+    
+    /**
+     * Creates a possibly parallel stream of the strings of this range in alphabetical order.
+     * 
+     * @return the stream of strings
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+    
+    @Override
+    public String toString() {
+        return "StrexRange[" + from + ", " + to + ")";
+    }
+
+}
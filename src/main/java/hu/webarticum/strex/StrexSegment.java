@@ -0,0 +1,505 @@
+package hu.webarticum.strex;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sequence of consecutive positions sharing the same {@link StrexPart}, compiled from a quantified atom,
+ * or a repeated group of other segments, compiled from a quantified group.
+ *
+ * <p>Only the part (or the segments of the group) and the repeat count are stored,
+ * local indices are decoded and encoded via powers of the radix (or of the size of the group).
+ * So the memory used does not depend on the repeat count.</p>
+ */
+final class StrexSegment {
+
+    private final StrexPart part;
+
+    private final List<StrexSegment> unit;
+
+    private final int[] unitStarts;
+
+    private final BigInteger[] unitWeights;
+
+    private final long[] longUnitWeights;
+
+    private final int unitWidth;
+
+    private final BigInteger unitSize;
+
+    private final long longUnitSize;
+
+    private final int repeat;
+
+    private final int width;
+
+    private final int radix;
+
+    private final BigInteger size;
+
+    private final long[] longPowers;
+
+    private final int chunkDigits;
+
+    private final BigInteger chunkRadix;
+
+
+    StrexSegment(StrexPart part, int repeat) {
+        this.part = part;
+        this.unit = null;
+        this.unitStarts = null;
+        this.unitWeights = null;
+        this.longUnitWeights = null;
+        this.unitWidth = 1;
+        this.unitSize = BigInteger.valueOf(part.size());
+        this.longUnitSize = part.size();
+        this.repeat = repeat;
+        this.width = repeat;
+        this.radix = part.size();
+        this.size = BigInteger.valueOf(radix).pow(repeat);
+        this.longPowers = radix > 1 && size.bitLength() < Long.SIZE ? calculateLongPowers(radix, repeat) : null;
+        if (radix > 1) {
+            int digits = 0;
+            long power = 1L;
+            while (power <= Long.MAX_VALUE / radix) {
+                power *= radix;
+                digits++;
+            }
+            this.chunkDigits = digits;
+            this.chunkRadix = BigInteger.valueOf(power);
+        } else {
+            this.chunkDigits = Integer.MAX_VALUE;
+            this.chunkRadix = BigInteger.valueOf(radix);
+        }
+    }
+
+    StrexSegment(List<StrexSegment> unit, int repeat) {
+        int unitLength = unit.size();
+        this.part = null;
+        this.unit = Collections.unmodifiableList(new ArrayList<>(unit));
+        this.unitStarts = new int[unitLength];
+        int start = 0;
+        for (int i = 0; i < unitLength; i++) {
+            unitStarts[i] = start;
+            start = addWidth(start, unit.get(i).width());
+        }
+        this.unitWidth = start;
+        this.unitWeights = new BigInteger[unitLength];
+        BigInteger weight = BigInteger.ONE;
+        for (int i = unitLength - 1; i >= 0; i--) {
+            unitWeights[i] = weight;
+            weight = weight.multiply(unit.get(i).size());
+        }
+        this.unitSize = weight;
+        boolean longUnit = unitSize.bitLength() < Long.SIZE;
+        this.longUnitWeights = longUnit ? toLongArray(unitWeights) : null;
+        this.longUnitSize = longUnit ? unitSize.longValue() : -1L;
+        this.repeat = repeat;
+        this.width = multiplyWidth(unitWidth, repeat);
+        this.radix = 0;
+        this.size = unitSize.pow(repeat);
+        boolean longPowersNeeded = longUnit && longUnitSize > 1 && size.bitLength() < Long.SIZE;
+        this.longPowers = longPowersNeeded ? calculateLongPowers(longUnitSize, repeat) : null;
+        this.chunkDigits = Integer.MAX_VALUE;
+        this.chunkRadix = unitSize;
+    }
+
+    private static long[] calculateLongPowers(long radix, int repeat) {
+        long[] result = new long[repeat + 1];
+        long power = 1L;
+        for (int i = 0; i <= repeat; i++) {
+            result[i] = power;
+            power *= radix;
+        }
+        return result;
+    }
+
+    private static long[] toLongArray(BigInteger[] bigIntegers) {
+        long[] result = new long[bigIntegers.length];
+        for (int i = 0; i < bigIntegers.length; i++) {
+            result[i] = bigIntegers[i].longValue();
+        }
+        return result;
+    }
+
+    private static int addWidth(int width1, int width2) {
+        long result = (long) width1 + width2;
+        if (result > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pattern is too long");
+        }
+        return (int) result;
+    }
+
+    private static int multiplyWidth(int width, int repeat) {
+        long result = (long) width * repeat;
+        if (result > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pattern is too long");
+        }
+        return (int) result;
+    }
+
+
+    /**
+     * Gets the common part of all the positions.
+     *
+     * @return the part of this segment, or `null` if this is a repeated group
+     */
+    StrexPart part() {
+        return part;
+    }
+
+    /**
+     * Gets the segments of one repetition of the group.
+     *
+     * @return the segments of the group, or `null` if this is not a repeated group
+     */
+    List<StrexSegment> unit() {
+        return unit;
+    }
+
+    int repeat() {
+        return repeat;
+    }
+
+    /**
+     * Gets the number of positions covered by this segment.
+     *
+     * @return the number of characters
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Gets the part at the given position of this segment.
+     *
+     * @param offset the position relative to the start of this segment
+     * @return the part at the given position
+     */
+    StrexPart partAt(int offset) {
+        if (part != null) {
+            return part;
+        }
+
+        int innerOffset = offset % unitWidth;
+        int unitIndex = unitIndexAt(innerOffset);
+        return unit.get(unitIndex).partAt(innerOffset - unitStarts[unitIndex]);
+    }
+
+    /**
+     * Finds the end of the run of positions that share the part at the given position.
+     *
+     * @param offset the position relative to the start of this segment
+     * @return the end of the run (exclusive), relative to the start of this segment
+     */
+    int runEnd(int offset) {
+        if (part != null) {
+            return width;
+        }
+
+        int innerOffset = offset % unitWidth;
+        int unitIndex = unitIndexAt(innerOffset);
+        int unitStart = unitStarts[unitIndex];
+        return offset - innerOffset + unitStart + unit.get(unitIndex).runEnd(innerOffset - unitStart);
+    }
+
+    private int unitIndexAt(int innerOffset) {
+        int searchResult = Arrays.binarySearch(unitStarts, innerOffset);
+        if (searchResult < 0) {
+            return 0 - searchResult - 2;
+        }
+
+        int unitIndex = searchResult;
+        while (unit.get(unitIndex).width() == 0) {
+            unitIndex++;
+        }
+        return unitIndex;
+    }
+
+    /**
+     * Gets the greatest number of bytes the characters of this segment can be encoded to.
+     *
+     * @param charset the target charset
+     * @return the maximum encoded length in bytes
+     */
+    int maxEncodedLength(Charset charset) {
+        if (part != null) {
+            return repeat * StrexByteEncoder.maxBytesPerChar(charset, part.maxChar());
+        }
+
+        int unitResult = 0;
+        for (StrexSegment unitSegment : unit) {
+            unitResult += unitSegment.maxEncodedLength(charset);
+        }
+        return unitResult * repeat;
+    }
+
+    BigInteger size() {
+        return size;
+    }
+
+    private long longPower(int exponent) {
+        if (longPowers != null) {
+            return longPowers[exponent];
+        }
+
+        return longUnitSize == 1L || exponent == 0 ? 1L : 0L;
+    }
+
+    private BigInteger power(int exponent) {
+        if (longPowers != null) {
+            return BigInteger.valueOf(longPowers[exponent]);
+        }
+
+        return unitSize.pow(exponent);
+    }
+
+    /**
+     * Gets the weight of the given position inside this segment,
+     * which is the number of local indices sharing the leading digits up to this position.
+     *
+     * <p>The size of this segment must fit in a `long` value.</p>
+     *
+     * @param offset the position relative to the start of this segment
+     * @return the weight of the position
+     */
+    long longPositionWeight(int offset) {
+        if (part != null) {
+            return longPower(repeat - offset - 1);
+        }
+
+        int innerOffset = offset % unitWidth;
+        int unitIndex = unitIndexAt(innerOffset);
+        long innerWeight = unit.get(unitIndex).longPositionWeight(innerOffset - unitStarts[unitIndex]);
+        return longPower(repeat - (offset / unitWidth) - 1) * longUnitWeights[unitIndex] * innerWeight;
+    }
+
+    /**
+     * Gets the weight of the given position inside this segment,
+     * which is the number of local indices sharing the leading digits up to this position.
+     *
+     * @param offset the position relative to the start of this segment
+     * @return the weight of the position
+     */
+    BigInteger positionWeight(int offset) {
+        if (part != null) {
+            return power(repeat - offset - 1);
+        }
+
+        int innerOffset = offset % unitWidth;
+        int unitIndex = unitIndexAt(innerOffset);
+        BigInteger innerWeight = unit.get(unitIndex).positionWeight(innerOffset - unitStarts[unitIndex]);
+        return power(repeat - (offset / unitWidth) - 1).multiply(unitWeights[unitIndex]).multiply(innerWeight);
+    }
+
+    /**
+     * Decodes the given local index into digits and/or characters.
+     *
+     * @param localIndex the index inside this segment
+     * @param digits the target array of digits or `null`
+     * @param chars the target array of characters or `null`
+     * @param offset the position of the first character of this segment in the target arrays
+     */
+    void decode(long localIndex, int[] digits, char[] chars, int offset) {
+        if (part != null) {
+            decodeRange(localIndex, 0, repeat, digits, chars, offset);
+            return;
+        }
+
+        long remaining = localIndex;
+        for (int i = repeat - 1; i >= 0; i--) {
+            long unitIndex = longUnitSize > 1 ? remaining % longUnitSize : 0L;
+            remaining = longUnitSize > 1 ? remaining / longUnitSize : 0L;
+            decodeUnit(unitIndex, digits, chars, offset + (i * unitWidth));
+        }
+    }
+
+    private void decodeUnit(long unitIndex, int[] digits, char[] chars, int offset) {
+        long remaining = unitIndex;
+        int unitLength = unit.size();
+        for (int i = 0; i < unitLength; i++) {
+            long weight = longUnitWeights[i];
+            unit.get(i).decode(remaining / weight, digits, chars, offset + unitStarts[i]);
+            remaining %= weight;
+        }
+    }
+
+    private void decodeUnit(BigInteger unitIndex, int[] digits, char[] chars, int offset) {
+        if (longUnitWeights != null) {
+            decodeUnit(unitIndex.longValue(), digits, chars, offset);
+            return;
+        }
+
+        BigInteger remaining = unitIndex;
+        int unitLength = unit.size();
+        for (int i = 0; i < unitLength; i++) {
+            BigInteger[] quotientAndRemainder = remaining.divideAndRemainder(unitWeights[i]);
+            unit.get(i).decode(quotientAndRemainder[0], digits, chars, offset + unitStarts[i]);
+            remaining = quotientAndRemainder[1];
+        }
+    }
+
+    /**
+     * Decodes the given local index into digits and/or characters.
+     *
+     * @param localIndex the index inside this segment
+     * @param digits the target array of digits or `null`
+     * @param chars the target array of characters or `null`
+     * @param offset the position of the first character of this segment in the target arrays
+     */
+    void decode(BigInteger localIndex, int[] digits, char[] chars, int offset) {
+        if (part == null) {
+            decodeGroup(localIndex, digits, chars, offset);
+            return;
+        }
+
+        BigInteger remaining = localIndex;
+        int end = repeat;
+        while (remaining.bitLength() >= Long.SIZE) {
+            BigInteger[] quotientAndRemainder = remaining.divideAndRemainder(chunkRadix);
+            decodeRange(quotientAndRemainder[1].longValue(), end - chunkDigits, end, digits, chars, offset);
+            end -= chunkDigits;
+            remaining = quotientAndRemainder[0];
+        }
+        decodeRange(remaining.longValue(), 0, end, digits, chars, offset);
+    }
+
+    private void decodeGroup(BigInteger localIndex, int[] digits, char[] chars, int offset) {
+        if (size.bitLength() < Long.SIZE) {
+            decode(localIndex.longValue(), digits, chars, offset);
+            return;
+        }
+
+        BigInteger remaining = localIndex;
+        for (int i = repeat - 1; i >= 0; i--) {
+            BigInteger[] quotientAndRemainder = remaining.divideAndRemainder(unitSize);
+            decodeUnit(quotientAndRemainder[1], digits, chars, offset + (i * unitWidth));
+            remaining = quotientAndRemainder[0];
+        }
+    }
+
+    /**
+     * Gets the character at the given offset of the string with the given local index.
+     *
+     * <p>The local index must fit in a `long` value.</p>
+     *
+     * @param localIndex the index inside this segment
+     * @param offset the position of the character relative to the start of this segment
+     * @return the character at the given offset
+     */
+    char charAt(long localIndex, int offset) {
+        if (part == null) {
+            return groupCharAt(localIndex, offset);
+        }
+
+        int digit = (int) ((localIndex / longPower(repeat - offset - 1)) % radix);
+        return part.charAt(digit);
+    }
+
+    private char groupCharAt(long localIndex, int offset) {
+        int unitNumber = offset / unitWidth;
+        int innerOffset = offset % unitWidth;
+        long unitIndex = longUnitSize > 1 ? (localIndex / longPower(repeat - unitNumber - 1)) % longUnitSize : 0L;
+        int i = unitIndexAt(innerOffset);
+        StrexSegment unitSegment = unit.get(i);
+        long innerIndex = (unitIndex / longUnitWeights[i]) % unitSegment.size().longValue();
+        return unitSegment.charAt(innerIndex, innerOffset - unitStarts[i]);
+    }
+
+    /**
+     * Gets the character at the given offset of the string with the given local index.
+     *
+     * @param localIndex the index inside this segment
+     * @param offset the position of the character relative to the start of this segment
+     * @return the character at the given offset
+     */
+    char charAt(BigInteger localIndex, int offset) {
+        if (size.bitLength() < Long.SIZE) {
+            return charAt(localIndex.longValue(), offset);
+        } else if (part == null) {
+            int unitNumber = offset / unitWidth;
+            int innerOffset = offset % unitWidth;
+            BigInteger unitIndex = localIndex.divide(power(repeat - unitNumber - 1)).mod(unitSize);
+            int i = unitIndexAt(innerOffset);
+            StrexSegment unitSegment = unit.get(i);
+            BigInteger innerIndex = unitIndex.divide(unitWeights[i]).mod(unitSegment.size());
+            return unitSegment.charAt(innerIndex, innerOffset - unitStarts[i]);
+        }
+
+        int digit = localIndex.divide(power(repeat - offset - 1)).mod(BigInteger.valueOf(radix)).intValue();
+        return part.charAt(digit);
+    }
+
+    private void decodeRange(long value, int from, int to, int[] digits, char[] chars, int offset) {
+        long remaining = value;
+        for (int i = to - 1; i >= from; i--) {
+            int digit = radix > 1 ? (int) (remaining % radix) : 0;
+            remaining = radix > 1 ? remaining / radix : 0L;
+            if (digits != null) {
+                digits[offset + i] = digit;
+            }
+            if (chars != null) {
+                chars[offset + i] = part.charAt(digit);
+            }
+        }
+    }
+
+    /**
+     * Calculates the local index of the first string
+     * whose leading digits are equal to the given ones.
+     *
+     * <p>The last digit can be equal to the radix (like an insertion point).</p>
+     *
+     * @param digits the source array of digits
+     * @param offset the position of the first digit of this segment in the source array
+     * @param count the number of leading digits to use
+     * @return the local index inside this segment
+     */
+    BigInteger encode(int[] digits, int offset, int count) {
+        if (part == null) {
+            return encodeGroup(digits, offset, count);
+        }
+
+        BigInteger result = BigInteger.ZERO;
+        int i = 0;
+        while (i < count) {
+            int chunkEnd = count - i <= chunkDigits ? count : i + chunkDigits;
+            long chunk = 0L;
+            for (int j = i; j < chunkEnd; j++) {
+                chunk = (chunk * radix) + digits[offset + j];
+            }
+            BigInteger chunkMultiplier = chunkEnd - i == chunkDigits ? chunkRadix : power(chunkEnd - i);
+            result = result.multiply(chunkMultiplier).add(BigInteger.valueOf(chunk));
+            i = chunkEnd;
+        }
+        return result.multiply(power(repeat - count));
+    }
+
+    private BigInteger encodeGroup(int[] digits, int offset, int count) {
+        BigInteger result = BigInteger.ZERO;
+        int unitCount = 0;
+        for (int unitStart = 0; unitStart < count; unitStart += unitWidth) {
+            int unitDigitCount = Math.min(unitWidth, count - unitStart);
+            result = result.multiply(unitSize).add(encodeUnit(digits, offset + unitStart, unitDigitCount));
+            unitCount++;
+        }
+        return result.multiply(power(repeat - unitCount));
+    }
+
+    private BigInteger encodeUnit(int[] digits, int offset, int count) {
+        BigInteger result = BigInteger.ZERO;
+        int unitLength = unit.size();
+        for (int i = 0; i < unitLength && unitStarts[i] < count; i++) {
+            StrexSegment unitSegment = unit.get(i);
+            int unitDigitCount = Math.min(unitSegment.width(), count - unitStarts[i]);
+            BigInteger localIndex = unitSegment.encode(digits, offset + unitStarts[i], unitDigitCount);
+            result = result.add(localIndex.multiply(unitWeights[i]));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,98 @@
+package hu.webarticum.strex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class StrexCacheTest {
+
+    @Test
+    void testHitAndMiss() {
+        StrexCache cache = new StrexCache(10);
+        Strex strex = cache.compile("[a-c]\\d");
+        assertThat(cache.compile("[a-c]\\d")).isSameAs(strex);
+        assertThat(cache.compile("x")).isNotSameAs(strex);
+        assertThat(strex.get(12)).isEqualTo("b2");
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isZero();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+    
+    @Test
+    void testLeastRecentlyUsedEviction() {
+        StrexCache cache = new StrexCache(2);
+        Strex strexA = cache.compile("a");
+        cache.compile("b");
+        cache.compile("a");
+        cache.compile("c");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+        assertThat(cache.compile("a")).isSameAs(strexA);
+        assertThat(cache.hitCount()).isEqualTo(2);
+        cache.compile("b");
+        assertThat(cache.missCount()).isEqualTo(4);
+        assertThat(cache.evictionCount()).isEqualTo(2);
+    }
+    
+    @Test
+    void testUsedPatternsGetSecondChance() {
+        StrexCache cache = new StrexCache(3);
+        Strex strexA = cache.compile("a");
+        Strex strexB = cache.compile("b");
+        cache.compile("c");
+        cache.compile("a");
+        cache.compile("b");
+        cache.compile("d");
+        assertThat(cache.evictionCount()).isEqualTo(1);
+        assertThat(cache.compile("a")).isSameAs(strexA);
+        assertThat(cache.compile("b")).isSameAs(strexB);
+        assertThat(cache.hitCount()).isEqualTo(4);
+        cache.compile("c");
+        assertThat(cache.missCount()).isEqualTo(5);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+    
+    @Test
+    void testInvalidPatternNotCached() {
+        StrexCache cache = new StrexCache(2);
+        assertThatThrownBy(() -> cache.compile("a+")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(cache.size()).isZero();
+        assertThatThrownBy(() -> new StrexCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void testConcurrentCompile() {
+        StrexCache cache = new StrexCache(5);
+        List<Long> sizes = IntStream.range(0, 1000).parallel()
+                .mapToObj(i -> cache.compile("\\d{" + (i % 8 + 1) + "}").size().longValue())
+                .collect(Collectors.toList());
+        for (int i = 0; i < sizes.size(); i++) {
+            assertThat(sizes.get(i)).isEqualTo((long) Math.pow(10, i % 8 + 1));
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(5);
+        assertThat(cache.hitCount() + cache.missCount()).isEqualTo(1000);
+    }
+    
+    @Test
+    void testConcurrentClear() {
+        StrexCache cache = new StrexCache(3);
+        IntStream.range(0, 2000).parallel().forEach(i -> {
+            if (i % 50 == 0) {
+                cache.clear();
+            } else {
+                cache.compile("x{" + (i % 7) + "}");
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            cache.compile("y{" + i + "}");
+        }
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+}
@@ -0,0 +1,73 @@
+package hu.webarticum.strex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class StrexPermutationTest {
+
+    @Test
+    void testBijection() {
+        Strex strex = Strex.compile("[a-e]\\d{2}");
+        StrexPermutation permutation = strex.permutation(42);
+        Set<String> values = new HashSet<>();
+        int identityCount = 0;
+        for (int row = 0; row < 500; row++) {
+            String value = permutation.get(row);
+            values.add(value);
+            assertThat(permutation.indexOf(value)).isEqualTo(BigInteger.valueOf(row));
+            if (value.equals(strex.get(row))) {
+                identityCount++;
+            }
+        }
+        assertThat(values).hasSize(500);
+        assertThat(identityCount).isLessThan(10);
+        assertThat(permutation.indexOf("x00")).isNull();
+        assertThatThrownBy(() -> permutation.get(500)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void testSeeds() {
+        Strex strex = Strex.compile("\\d{6}");
+        assertThat(strex.permutation(1).get(0)).isEqualTo(strex.permutation(1).get(0));
+        assertThat(strex.permutation(1).get(0)).isNotEqualTo(strex.permutation(2).get(0));
+    }
+
+    @Test
+    void testSmallSizes() {
+        assertThat(Strex.compile("abc").permutation(7).get(0)).isEqualTo("abc");
+        assertThat(Strex.compile("abc").permutation(7).indexOf("abc")).isZero();
+        StrexPermutation permutation = Strex.compile("[xy]").permutation(7);
+        assertThat(new String[] { permutation.get(0), permutation.get(1) }).containsExactlyInAnyOrder("x", "y");
+    }
+
+    @Test
+    void testNearLongLimit() {
+        Strex strex = Strex.compile("[0-7]{20}[0-6]");
+        StrexPermutation permutation = strex.permutation(42);
+        long size = strex.size().longValueExact();
+        for (long row = size - 10; row < size; row++) {
+            String value = permutation.get(row);
+            assertThat(permutation.indexOf(value)).isEqualTo(BigInteger.valueOf(row));
+        }
+    }
+
+    @Test
+    void testLargeSpace() {
+        Strex strex = Strex.compile("[a-z]{30}");
+        StrexPermutation permutation = strex.permutation(42);
+        BigInteger row = new BigInteger("1234567890123456789012345678901234567890");
+        for (int i = 0; i < 20; i++) {
+            BigInteger currentRow = row.add(BigInteger.valueOf(i));
+            String value = permutation.get(currentRow);
+            assertThat(permutation.indexOf(value)).isEqualTo(currentRow);
+        }
+        assertThat(permutation.get(row)).isNotEqualTo(strex.get(row));
+    }
+
+}
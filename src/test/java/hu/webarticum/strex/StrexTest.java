@@ -1,11 +1,35 @@
 package hu.webarticum.strex;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 
 class StrexTest {
 
@@ -45,12 +69,65 @@ class StrexTest {
         check(strex, new String[] { " " }, BigInteger.valueOf(69));
     }
 
+    @Test
+    void testCharClazzWithCollationEqualChars() {
+        Strex strex = Strex.compile("[\u0002\u0001a]");
+        check(strex, new String[] { "\u0001", "\u0002", "a" });
+    }
+
+    @Test
+    void testWideCharClazz() {
+        Strex strex = Strex.compile("[\u4e00-\u9fff]x");
+        assertThat(strex.size()).isEqualTo(20992);
+        for (long i = 0; i < 20992; i += 97) {
+            assertThat(strex.indexOf(strex.get(i))).isEqualTo(i);
+        }
+        assertThat(strex.indexOf("\u4e00y")).isEqualTo(-2);
+    }
+
     @Test
     void testQuantifiers() {
         Strex strex = Strex.compile("a{3}b{2}");
         check(strex, new String[] { "aaabb" });
     }
 
+    @Test
+    void testLongQuantifier() {
+        Strex strex = Strex.compile("x\\d{100000}y");
+        assertThat(strex.size()).isEqualTo(BigInteger.TEN.pow(100000));
+        String last = strex.get(strex.size().subtract(BigInteger.ONE));
+        assertThat(last).hasSize(100002).startsWith("x99999").endsWith("99999y");
+        BigInteger index = BigInteger.valueOf(7).pow(100000).shiftRight(3);
+        String text = strex.get(index);
+        assertThat(text.substring(1, 100001)).isEqualTo(String.format("%0100000d", index));
+        assertThat(strex.indexOf(text)).isEqualTo(index);
+    }
+
+    @Test
+    @Timeout(5)
+    void testLongOptionalQuantifier() {
+        Strex strex = Strex.compile("x{0,100000}");
+        assertThat(strex.size()).isEqualTo(100001);
+        assertThat(strex.get(100000)).hasSize(100000);
+        assertThat(strex.indexOf("xxx")).isEqualTo(3);
+        Strex wideStrex = Strex.compile("[a-z]{0,20000}");
+        BigInteger expectedSize = BigInteger.valueOf(26).pow(20001).subtract(BigInteger.ONE).divide(BigInteger.valueOf(25));
+        assertThat(wideStrex.size()).isEqualTo(expectedSize);
+        assertThat(wideStrex.get(2)).isEqualTo("aa");
+    }
+
+    @Test
+    void testQuantifiedCharClazzRoundTrip() {
+        Strex strex = Strex.compile("[a-zA-Z0-9]{500}\\-[xy]{3}");
+        BigInteger index = BigInteger.valueOf(3).pow(1800).add(BigInteger.valueOf(5));
+        String text = strex.get(index);
+        assertThat(strex.indexOf(text)).isEqualTo(index);
+        assertThat(strex.prefixRange(text.substring(0, 499)).size()).isEqualTo(62 * 8);
+        Iterator<String> iterator = strex.iterator(index);
+        assertThat(iterator.next()).isEqualTo(text);
+        assertThat(iterator.next()).isEqualTo(strex.get(index.add(BigInteger.ONE)));
+    }
+
     @Test
     void testSomeSpecials() {
         Strex strex = Strex.compile("\\t\\d");
@@ -99,6 +176,230 @@ class StrexTest {
                 new BigInteger("9700876798663497167909692193801408010"));
     }
 
+    @Test
+    void testLongAndBigIntegerAccessAgree() {
+        Strex strex = Strex.compile("PID:\\d{3}\\-[a-f]{5}\\-[xrbc]{3}");
+        assertThat(strex.size()).isEqualTo(497664000L);
+        assertThat(strex.get(0)).isEqualTo("PID:000-aaaaa-bbb");
+        assertThat(strex.get(497663999L)).isEqualTo("PID:999-fffff-xxx");
+        assertThat(strex.get(176650096L)).isEqualTo("PID:354-fedab-xbb");
+        assertThat(strex.get(BigInteger.valueOf(176650096L))).isEqualTo("PID:354-fedab-xbb");
+        assertThat(strex.indexOf("PID:354-fedab-xbb")).isEqualTo(176650096L);
+        assertThat(strex.indexOf("PID:354-fedab-xbbz")).isEqualTo(-176650098L);
+    }
+
+    @Test
+    void testLongBoundary() {
+        Strex strex = Strex.compile("\\d{19}");
+        assertThat(strex.get(1234567890123456789L)).isEqualTo("1234567890123456789");
+        assertThat(strex.indexOf("9999999999999999999")).isEqualTo(new BigInteger("9999999999999999999"));
+    }
+
+    @Test
+    void testLargeRoundTrip() {
+        Strex strex = Strex.compile("\\w{20}\\d");
+        BigInteger index = new BigInteger("1234567890123456789012345678901234567");
+        String text = strex.get(index);
+        assertThat(text).isEqualTo("705VlgoUrnpCxvURgyAo7");
+        assertThat(strex.indexOf(text)).isEqualTo(index);
+    }
+
+    @Test
+    void testIteratorMatchesGet() {
+        Strex strex = Strex.compile("[a-c]x\\d[yz]");
+        Iterator<String> iterator = strex.iterator();
+        for (long i = 0; i < 60; i++) {
+            assertThat(iterator.hasNext()).isTrue();
+            assertThat(iterator.next()).isEqualTo(strex.get(i));
+        }
+        assertThat(iterator.hasNext()).isFalse();
+        assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void testIteratorFrom() {
+        Strex strex = Strex.compile("[a-c]\\d");
+        Iterator<String> iterator = strex.iterator(BigInteger.valueOf(18));
+        assertThat(iterator.next()).isEqualTo("b8");
+        assertThat(iterator.next()).isEqualTo("b9");
+        assertThat(iterator.next()).isEqualTo("c0");
+    }
+
+    @Test
+    void testRange() {
+        Strex strex = Strex.compile("[a-c]\\d");
+        StrexRange range = strex.range(BigInteger.valueOf(8), BigInteger.valueOf(12));
+        assertThat(range.size()).isEqualTo(4);
+        assertThat(range.get(1)).isEqualTo("a9");
+        assertThat(range).containsExactly("a8", "a9", "b0", "b1");
+        assertThat(strex.range(BigInteger.valueOf(30), BigInteger.valueOf(30))).isEmpty();
+        assertThatThrownBy(() -> strex.range(BigInteger.ZERO, BigInteger.valueOf(31)))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void testHugeRangeIteration() {
+        Strex strex = Strex.compile("\\d{30}");
+        BigInteger from = new BigInteger("123456789012345678901234567898");
+        Iterator<String> iterator = strex.iterator(from, strex.size());
+        assertThat(iterator.next()).isEqualTo("123456789012345678901234567898");
+        assertThat(iterator.next()).isEqualTo("123456789012345678901234567899");
+        assertThat(iterator.next()).isEqualTo("123456789012345678901234567900");
+    }
+
+    @Test
+    void testSpliteratorSplitting() {
+        Strex strex = Strex.compile("[a-c]\\d");
+        Spliterator<String> spliterator = strex.spliterator();
+        assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED))
+                .isTrue();
+        Spliterator<String> prefix = spliterator.trySplit();
+        assertThat(prefix.estimateSize()).isEqualTo(15);
+        assertThat(spliterator.estimateSize()).isEqualTo(15);
+        List<String> items = new ArrayList<>();
+        prefix.forEachRemaining(items::add);
+        spliterator.forEachRemaining(items::add);
+        assertThat(items).containsExactlyElementsOf(strex);
+    }
+
+    @Test
+    void testParallelStream() {
+        Strex strex = Strex.compile("[a-f]{3}\\d{3}");
+        List<String> parallelItems = strex.parallelStream().collect(Collectors.toList());
+        assertThat(parallelItems).hasSize(216000).containsExactlyElementsOf(strex);
+        assertThat(strex.stream().sorted(strex.spliterator().getComparator()).skip(1000).findFirst())
+                .contains(strex.get(1000));
+    }
+
+    @Test
+    void testRangeStream() {
+        Strex strex = Strex.compile("[a-c]\\d");
+        StrexRange range = strex.range(BigInteger.valueOf(8), BigInteger.valueOf(12));
+        assertThat(range.parallelStream().collect(Collectors.toList())).containsExactly("a8", "a9", "b0", "b1");
+    }
+
+    @Test
+    void testPrefixRange() {
+        Strex strex = Strex.compile("PID:\\d{3}\\-[a-f]{5}\\-[xrbc]{3}");
+        StrexRange range = strex.prefixRange("PID:35");
+        assertThat(range.from()).isEqualTo(strex.indexOf("PID:350-aaaaa-bbb"));
+        assertThat(range.to()).isEqualTo(strex.indexOf("PID:359-fffff-xxx").add(BigInteger.ONE));
+        assertThat(strex.prefixRange("").size()).isEqualTo(strex.size());
+        assertThat(strex.prefixRange("PID:354-fedab-xbb").size()).isEqualTo(1);
+    }
+
+    @Test
+    void testPrefixRangeNotFound() {
+        Strex strex = Strex.compile("[mu]\\d");
+        StrexRange innerRange = strex.prefixRange("p");
+        assertThat(innerRange.isEmpty()).isTrue();
+        assertThat(innerRange.from()).isEqualTo(10);
+        StrexRange longerRange = strex.prefixRange("m4u");
+        assertThat(longerRange.isEmpty()).isTrue();
+        assertThat(longerRange.from()).isEqualTo(5);
+        assertThat(strex.prefixRange("u").from()).isEqualTo(10);
+        assertThat(strex.prefixRange("u").to()).isEqualTo(20);
+    }
+
+    @Test
+    void testNavigationContained() {
+        Strex strex = Strex.compile("[mu]\\d");
+        assertThat(strex.ceilingIndex("u3")).isEqualTo(13);
+        assertThat(strex.floorIndex("u3")).isEqualTo(13);
+        assertThat(strex.higherIndex("u3")).isEqualTo(14);
+        assertThat(strex.lowerIndex("u3")).isEqualTo(12);
+    }
+
+    @Test
+    void testNavigationNotContained() {
+        Strex strex = Strex.compile("[mu]\\d");
+        assertThat(strex.ceilingIndex("p2")).isEqualTo(10);
+        assertThat(strex.floorIndex("p2")).isEqualTo(9);
+        assertThat(strex.higherIndex("m4u")).isEqualTo(5);
+        assertThat(strex.floorIndex("m4u")).isEqualTo(4);
+        assertThat(strex.ceilingIndex("u")).isEqualTo(10);
+        assertThat(strex.lowerIndex("u")).isEqualTo(9);
+    }
+
+    @Test
+    void testNavigationOutside() {
+        Strex strex = Strex.compile("[mu]\\d");
+        assertThat(strex.floorIndex("a0")).isNull();
+        assertThat(strex.lowerIndex("m0")).isNull();
+        assertThat(strex.ceilingIndex("z5")).isNull();
+        assertThat(strex.higherIndex("u9")).isNull();
+        assertThat(strex.ceilingIndex("")).isZero();
+    }
+
+    @Test
+    void testRangeBetween() {
+        Strex strex = Strex.compile("[mu]\\d");
+        assertThat(strex.rangeBetween("m5", true, "u2", false)).containsExactly(
+                "m5", "m6", "m7", "m8", "m9", "u0", "u1");
+        assertThat(strex.rangeBetween("m5", false, "u2", true)).containsExactly(
+                "m6", "m7", "m8", "m9", "u0", "u1", "u2");
+        assertThat(strex.rangeBetween("p", true, "z", true).from()).isEqualTo(10);
+        assertThat(strex.rangeBetween("u5", true, "m5", true).isEmpty()).isTrue();
+    }
+
+    @Test
+    void testConcurrentIndexOf() {
+        Strex strex = Strex.compile("[a-zé]{2}\\w");
+        List<BigInteger> indices = strex.parallelStream().map(strex::indexOf).collect(Collectors.toList());
+        for (int i = 0; i < indices.size(); i++) {
+            assertThat(indices.get(i)).isEqualTo(i);
+        }
+        List<BigInteger> insertionPoints = strex.parallelStream()
+                .map(text -> strex.indexOf(text.substring(0, 1) + "ű"))
+                .collect(Collectors.toList());
+        assertThat(insertionPoints).allMatch(index -> index.signum() < 0);
+        BigInteger expectedInsertionPoint = strex.prefixRange("ev").from();
+        assertThat(strex.indexOf("eű")).isEqualTo(expectedInsertionPoint.negate().subtract(BigInteger.ONE));
+    }
+
+    @Test
+    void testIndexOfInSparseCharClazz() {
+        Strex strex = Strex.compile("[\u9fffaz]\\d");
+        assertThat(strex.indexOf("z3")).isEqualTo(13);
+        assertThat(strex.indexOf("\u9fff3")).isEqualTo(23);
+        assertThat(strex.indexOf("m0")).isEqualTo(-11);
+    }
+
+    @Test
+    void testIndexOfAbsentInWideCharClazz() {
+        Strex strex = Strex.compile("[\u0100-\u2fff]");
+        Collator collator = Collator.getInstance(Locale.US);
+        for (char c : new char[] { '!', '0', 'a', 'Z', '\u00e9', '\u3000', '\uffee' }) {
+            CollationKey key = collator.getCollationKey(Character.toString(c));
+            int expectedInsertionPoint = 0;
+            for (char member = '\u0100'; member <= '\u2fff'; member++) {
+                CollationKey memberKey = collator.getCollationKey(Character.toString(member));
+                int keyResult = memberKey.compareTo(key);
+                if (keyResult < 0 || (keyResult == 0 && member < c)) {
+                    expectedInsertionPoint++;
+                }
+            }
+            assertThat(strex.indexOf(Character.toString(c))).isEqualTo(-expectedInsertionPoint - 1);
+        }
+    }
+
+    @Test
+    void testIndexOfInDenseCharClazz() {
+        Strex strex = Strex.compile("[a-eg-z]");
+        assertThat(strex.indexOf("h")).isEqualTo(6);
+        assertThat(strex.indexOf("f")).isEqualTo(-6);
+        assertThat(strex.indexOf("F")).isEqualTo(-6);
+        assertThat(strex.indexOf("0")).isEqualTo(-1);
+        assertThat(strex.indexOf("é")).isEqualTo(-6);
+    }
+
+    @Test
+    void testIndexOfEmpty() {
+        assertThat(Strex.compile("[mu]\\d").indexOf("")).isEqualTo(-1);
+        assertThat(Strex.compile("").indexOf("")).isZero();
+        assertThat(Strex.compile("").indexOf("a")).isEqualTo(-2);
+    }
+
     @Test
     void testIndexOfContained() {
         Strex strex = Strex.compile("[mu]\\d");
@@ -134,8 +435,509 @@ class StrexTest {
         Strex strex = Strex.compile("[mu]\\d");
         assertThat(strex.indexOf("m4u")).isEqualTo(-6);
     }
+
+    @Test
+    void testLiteralsInCharacterClass() {
+        check(Strex.compile("[.(]x"), new String[] { ".x", "(x" });
+    }
+
+    @Test
+    void testBraceWithoutQuantifier() {
+        check(Strex.compile("a{b}{2}"), new String[] { "a{b}}" });
+    }
+
+    @Test
+    void testAnchorsAndEscapedDollar() {
+        check(Strex.compile("^^\\$[ab]{2}$$"), new String[] { "$aa", "$ab", "$ba", "$bb" });
+    }
+
+    @Test
+    void testSyntaxErrorOffset() {
+        assertThatThrownBy(() -> Strex.compile("ab[cd"))
+                .isInstanceOf(PatternSyntaxException.class)
+                .extracting(e -> ((PatternSyntaxException) e).getIndex()).isEqualTo(2);
+        assertThatThrownBy(() -> Strex.compile("ab[z-a]"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .extracting(e -> ((PatternSyntaxException) e).getIndex()).isEqualTo(5);
+        assertThatThrownBy(() -> Strex.compile("a+"))
+                .isInstanceOf(PatternSyntaxException.class)
+                .extracting(e -> ((PatternSyntaxException) e).getIndex()).isEqualTo(1);
+    }
+
+    @Test
+    void testLength() {
+        assertThat(Strex.compile("").length()).isZero();
+        assertThat(Strex.compile("a\\d{3}[xy]{0}z").length()).isEqualTo(5);
+    }
+
+    @Test
+    void testGetInto() {
+        Strex strex = Strex.compile("[a-c]\\d{2}");
+        char[] buffer = "<.....>".toCharArray();
+        strex.getInto(123, buffer, 2);
+        assertThat(new String(buffer)).isEqualTo("<.b23.>");
+        assertThatThrownBy(() -> strex.getInto(0, buffer, 5)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> strex.getInto(300, buffer, 0)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void testAppendTo() throws IOException {
+        Strex strex = Strex.compile("[a-c]\\d{2}");
+        assertThat(strex.appendTo(123, new StringBuilder("x:")).toString()).isEqualTo("x:b23");
+        StringWriter writer = new StringWriter();
+        strex.appendTo(299, (Appendable) writer);
+        assertThat(writer.toString()).isEqualTo("c99");
+    }
+
+    @Test
+    void testDecodeIntoLargeSpace() throws IOException {
+        Strex strex = Strex.compile("\\d{30}");
+        String expected = strex.get(1234567890123L);
+        char[] buffer = new char[30];
+        strex.getInto(1234567890123L, buffer, 0);
+        assertThat(new String(buffer)).isEqualTo(expected);
+        assertThat(strex.appendTo(1234567890123L, new StringBuilder()).toString()).isEqualTo(expected);
+    }
+
+    @Test
+    void testCharSequenceAt() {
+        Strex strex = Strex.compile("x[a-c]{2}\\d-");
+        CharSequence charSequence = strex.charSequenceAt(47);
+        assertThat(charSequence.length()).isEqualTo(5);
+        assertThat(charSequence.charAt(1)).isEqualTo('b');
+        assertThat(charSequence.charAt(2)).isEqualTo('b');
+        assertThat(charSequence.charAt(3)).isEqualTo('7');
+        assertThat(charSequence.subSequence(1, 4).toString()).isEqualTo("bb7");
+        assertThat(charSequence.subSequence(1, 4).charAt(2)).isEqualTo('7');
+        assertThat(charSequence.toString()).isEqualTo("xbb7-");
+        assertThatThrownBy(() -> charSequence.charAt(5)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> strex.charSequenceAt(90)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void testCharSequenceAtLargeSpace() {
+        Strex strex = Strex.compile("[a-z]{20}\\d{20}");
+        BigInteger index = new BigInteger("123456789012345678901234567890123456789");
+        String expected = strex.get(index);
+        CharSequence charSequence = strex.charSequenceAt(index);
+        for (int i = 0; i < expected.length(); i++) {
+            assertThat(charSequence.charAt(i)).isEqualTo(expected.charAt(i));
+        }
+        assertThat(charSequence.toString()).isEqualTo(expected);
+    }
+
+    @Test
+    void testEncode() {
+        Strex strex = Strex.compile("[aá][ű€]\\d");
+        assertThat(strex.maxEncodedLength(StandardCharsets.UTF_8)).isEqualTo(6);
+        assertThat(strex.maxEncodedLength(StandardCharsets.ISO_8859_1)).isEqualTo(3);
+        for (int i = 0; i < 40; i++) {
+            String string = strex.get(i);
+            assertThat(strex.encode(i, StandardCharsets.UTF_8)).isEqualTo(string.getBytes(StandardCharsets.UTF_8));
+            assertThat(strex.encode(i, StandardCharsets.ISO_8859_1))
+                    .isEqualTo(string.getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(strex.encode(i, StandardCharsets.US_ASCII)).isEqualTo(string.getBytes(StandardCharsets.US_ASCII));
+        }
+        assertThatThrownBy(() -> strex.encode(0, StandardCharsets.UTF_16))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testEncodeSurrogates() {
+        Strex strex = Strex.compile("[\uD83D\uD83Cx][\uDE00\uDE01y]");
+        for (int i = 0; i < strex.size().intValue(); i++) {
+            String string = strex.get(i);
+            assertThat(strex.encode(i, StandardCharsets.UTF_8)).isEqualTo(string.getBytes(StandardCharsets.UTF_8));
+            assertThat(strex.encode(i, StandardCharsets.ISO_8859_1))
+                    .isEqualTo(string.getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(strex.encode(i, StandardCharsets.US_ASCII)).isEqualTo(string.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testEncodeInto() {
+        Strex strex = Strex.compile("\\d{20}é");
+        ByteBuffer buffer = ByteBuffer.allocate(25);
+        buffer.put((byte) '<');
+        int written = strex.encodeInto(42, buffer, StandardCharsets.UTF_8);
+        assertThat(written).isEqualTo(22);
+        assertThat(new String(buffer.array(), 1, written, StandardCharsets.UTF_8)).isEqualTo(strex.get(42));
+        assertThatThrownBy(() -> strex.encodeInto(43, buffer, StandardCharsets.UTF_8))
+                .isInstanceOf(BufferOverflowException.class);
+        assertThat(buffer.position()).isEqualTo(23);
+    }
+
+    @Test
+    void testWriteRange() throws IOException {
+        Strex strex = Strex.compile("[aé]\\d{4}");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BigInteger from = BigInteger.valueOf(9990);
+        BigInteger to = BigInteger.valueOf(10020);
+        long written = strex.writeRange(
+                from, to, Channels.newChannel(outputStream), StandardCharsets.UTF_8, new byte[] { '\n' });
+        String expected = strex.range(from, to).stream().collect(Collectors.joining("\n"));
+        assertThat(new String(outputStream.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(written).isEqualTo(expected.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void testWriteRangeParallel() throws IOException {
+        Strex strex = Strex.compile("[a-f]{2}\\d{3}");
+        BigInteger from = BigInteger.valueOf(17);
+        BigInteger to = BigInteger.valueOf(35000);
+        Path file = Files.createTempFile("strex", ".txt");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { '>' }));
+            strex.writeRangeParallel(from, to, channel, 1, StandardCharsets.US_ASCII, new byte[] { ',', ' ' });
+        }
+        String expected = ">" + strex.range(from, to).stream().collect(Collectors.joining(", "));
+        try {
+            assertThat(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII)).isEqualTo(expected);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testRandom() {
+        Strex strex = Strex.compile("[a-c]x\\d");
+        SplittableRandom random = new SplittableRandom(42);
+        int[] counts = new int[30];
+        for (int i = 0; i < 30000; i++) {
+            String string = strex.random(random);
+            counts[strex.indexOf(string).intValueExact()]++;
+        }
+        for (int count : counts) {
+            assertThat(count).isBetween(800, 1200);
+        }
+        assertThat(Strex.compile("\\d{100}").random(new Random(42))).hasSize(100).containsOnlyDigits();
+    }
+
+    @Test
+    void testSample() {
+        Strex strex = Strex.compile("[a-f]{2}\\d{2}");
+        List<String> sample = strex.sample(100, new Random(42));
+        assertThat(sample).hasSize(100).doesNotHaveDuplicates().isSortedAccordingTo(
+                (a, b) -> strex.indexOf(a).compareTo(strex.indexOf(b)));
+        assertThat(strex.sample(3600, new SplittableRandom(42))).hasSize(3600).doesNotHaveDuplicates();
+        assertThatThrownBy(() -> strex.sample(3601, new Random(42))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSampleIndicesLargeSpace() {
+        Strex strex = Strex.compile("\\d{40}");
+        List<BigInteger> indices = strex.sampleIndices(50, new SplittableRandom(42));
+        assertThat(indices).hasSize(50).doesNotHaveDuplicates().isSorted();
+        assertThat(indices).allMatch(index -> index.signum() >= 0 && index.compareTo(strex.size()) < 0);
+        assertThat(indices.get(49).bitLength()).isGreaterThan(100);
+    }
+
+    @Test
+    void testOptional() {
+        check(Strex.compile("a?[bc]"), new String[] { "ab", "ac", "b", "c" });
+    }
+
+    @Test
+    void testVariableQuantifier() {
+        check(Strex.compile("x[ab]{1,2}"), new String[] { "xa", "xaa", "xab", "xb", "xba", "xbb" });
+    }
+
+    @Test
+    void testVariableLengthOverlapping() {
+        Strex strex = Strex.compile("[a-c]?[b-d]");
+        check(strex, new String[] { "ab", "ac", "ad", "b", "bb", "bc", "bd", "c", "cb", "cc", "cd", "d" });
+        assertThat(strex.indexOf("bc")).isEqualTo(5);
+        assertThat(strex.indexOf("a")).isEqualTo(-1);
+        assertThat(strex.indexOf("bca")).isEqualTo(-7);
+        assertThat(strex.prefixRange("c").from()).isEqualTo(7);
+        assertThat(strex.prefixRange("c").to()).isEqualTo(11);
+    }
+
+    @Test
+    void testVariableLengthIdentifiers() {
+        Strex strex = Strex.compile("[A-Z]{2,4}\\d{3,6}");
+        BigInteger letterCount = BigInteger.valueOf(26L * 26 + 26L * 26 * 26 + 26L * 26 * 26 * 26);
+        BigInteger digitCount = BigInteger.valueOf(1000L + 10000 + 100000 + 1000000);
+        assertThat(strex.size()).isEqualTo(letterCount.multiply(digitCount));
+        assertThat(strex.isFixedLength()).isFalse();
+        assertThat(strex.minLength()).isEqualTo(5);
+        assertThat(strex.maxLength()).isEqualTo(10);
+        assertThat(strex.get(0)).isEqualTo("AA000");
+        assertThat(strex.get(1)).isEqualTo("AA0000");
+        assertThat(strex.get(strex.size().subtract(BigInteger.ONE))).isEqualTo("ZZZZ999999");
+        for (String text : new String[] { "AB123", "QWER987654", "XYZ0000", "ZZ999" }) {
+            BigInteger index = strex.indexOf(text);
+            assertThat(strex.get(index)).isEqualTo(text);
+            assertThat(strex.get(index.add(BigInteger.ONE))).isGreaterThan(text);
+        }
+        assertThat(strex.indexOf("AB12").signum()).isNegative();
+        assertThatThrownBy(strex::length).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void testVariableLengthLongAndBigIntegerAccessAgree() {
+        String pattern = "[A-Z]{2,4}\\d{3,6}";
+        Strex strex = Strex.compile(pattern);
+        StrexAutomaton automaton = new StrexAutomaton(StrexParser.parse(pattern), false);
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            long index = (random.nextLong() >>> 1) % strex.size().longValue();
+            String text = automaton.get(BigInteger.valueOf(index));
+            assertThat(strex.get(index)).isEqualTo(text);
+            assertThat(strex.get(BigInteger.valueOf(index))).isEqualTo(text);
+            assertThat(strex.charSequenceAt(BigInteger.valueOf(index)).toString()).isEqualTo(text);
+            assertThat(strex.indexOf(text)).isEqualTo(automaton.indexOf(text));
+            String prefix = text.substring(0, 4);
+            assertThat(strex.indexOf(prefix)).isEqualTo(automaton.indexOf(prefix));
+            assertThat(strex.random(random)).matches(pattern);
+        }
+    }
+
+    @Test
+    void testVariableQuantifierErrors() {
+        assertThatThrownBy(() -> Strex.compile("a{2,}")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> Strex.compile("a{3,2}")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> Strex.compile("a??")).isInstanceOf(PatternSyntaxException.class);
+        check(Strex.compile("a{2,b}"), new String[] { "a{2,b}" });
+    }
+
+    @Test
+    @Timeout(5)
+    void testTooComplexPattern() {
+        assertThat(Strex.compile("[ab]{0,8}a[ab]{8}").size()).isEqualTo(256 * 511);
+        assertThatThrownBy(() -> Strex.compile("[ab]{0,16}a[ab]{16}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("too complex");
+    }
+
+    @Test
+    void testPredefinedClassOrderInAutomaton() {
+        for (String pattern : new String[] { ".", "\\s", "\\W", "\\D", "[^a-z]" }) {
+            List<String> expected = Strex.compile(pattern).stream().collect(Collectors.toList());
+            assertThat(Strex.compile(pattern + "|" + pattern).stream()).containsExactlyElementsOf(expected);
+            assertThat(Strex.compile("(" + pattern + ")").stream()).containsExactlyElementsOf(expected);
+            assertThat(Strex.compile("(?:" + pattern + ")?").stream().skip(1)).containsExactlyElementsOf(expected);
+        }
+        assertThat(Strex.compile("\\W{2}x?").get(2)).isEqualTo(Strex.compile("\\W{2}").get(1));
+        assertThat(Strex.compile("\\s?").stream()).containsExactly("", "\t", " ");
+    }
+
+    @Test
+    void testAlternation() {
+        check(Strex.compile("b|a|c"), new String[] { "a", "b", "c" });
+        Strex strex = Strex.compile("(USR|ADM|SYS)-\\d{2}");
+        assertThat(strex.size()).isEqualTo(300);
+        assertThat(strex.isFixedLength()).isTrue();
+        assertThat(strex.get(0)).isEqualTo("ADM-00");
+        assertThat(strex.get(100)).isEqualTo("SYS-00");
+        assertThat(strex.get(299)).isEqualTo("USR-99");
+        assertThat(strex.indexOf("SYS-42")).isEqualTo(142);
+        assertThat(strex.indexOf("XYZ-00")).isEqualTo(-301);
+    }
+
+    @Test
+    void testInterleavingAlternatives() {
+        Strex strex = Strex.compile("([a-c]x|b[yz])");
+        check(strex, new String[] { "ax", "bx", "by", "bz", "cx" });
+        assertThat(strex.indexOf("bz")).isEqualTo(3);
+        assertThat(strex.prefixRange("b").from()).isEqualTo(1);
+        assertThat(strex.prefixRange("b").to()).isEqualTo(4);
+    }
+
+    @Test
+    void testRepeatedGroups() {
+        check(Strex.compile("(ab|cd){2}"), new String[] { "abab", "abcd", "cdab", "cdcd" });
+        check(Strex.compile("x(?:ab)?"), new String[] { "x", "xab" });
+        Strex product = Strex.compile("(a[xy]){3}");
+        assertThat(product.isFixedLength()).isTrue();
+        assertThat(product.length()).isEqualTo(6);
+        assertThat(product.size()).isEqualTo(8);
+        char[] buffer = new char[6];
+        product.getInto(5, buffer, 0);
+        assertThat(new String(buffer)).isEqualTo("ayaxay");
+    }
+
+    @Test
+    void testRepeatedGroupMatchesFlattened() {
+        Strex grouped = Strex.compile("x([ab]c(d[0-2]){2}){3}");
+        Strex flattened = Strex.compile("x[ab]cd[0-2]d[0-2][ab]cd[0-2]d[0-2][ab]cd[0-2]d[0-2]");
+        assertThat(grouped.length()).isEqualTo(flattened.length());
+        assertThat(grouped.size()).isEqualTo(flattened.size());
+        List<String> strings = new ArrayList<>();
+        grouped.iterator().forEachRemaining(strings::add);
+        assertThat(strings).containsExactlyElementsOf(flattened);
+        for (int i = 0; i < strings.size(); i += 37) {
+            String string = strings.get(i);
+            assertThat(grouped.get(BigInteger.valueOf(i))).isEqualTo(string);
+            assertThat(grouped.charSequenceAt(i).toString()).isEqualTo(string);
+            assertThat(grouped.encode(i, StandardCharsets.UTF_8)).isEqualTo(string.getBytes(StandardCharsets.UTF_8));
+            assertThat(grouped.indexOf(string)).isEqualTo(i);
+        }
+        assertThat(grouped.indexOf("xbcd1d3")).isEqualTo(flattened.indexOf("xbcd1d3"));
+        assertThat(grouped.prefixRange("xacd2d0b").size()).isEqualTo(flattened.prefixRange("xacd2d0b").size());
+        Strex other = Strex.compile("x[a-c]{2}d1.{11}");
+        assertThat(grouped.overlapSize(other)).isEqualTo(flattened.overlapSize(other));
+    }
+
+    @Test
+    void testHugeRepeatedGroups() {
+        Strex single = Strex.compile("(a){50000000}");
+        assertThat(single.length()).isEqualTo(50000000);
+        assertThat(single.size()).isEqualTo(1);
+        Strex pair = Strex.compile("(ab){100000000}");
+        assertThat(pair.length()).isEqualTo(200000000);
+        assertThat(pair.charSequenceAt(0).subSequence(199999996, 200000000).toString()).isEqualTo("abab");
+        Strex large = Strex.compile("([a-z]{5}\\d){20}");
+        assertThat(large.size()).isEqualTo(BigInteger.valueOf(26).pow(100).multiply(BigInteger.TEN.pow(20)));
+        BigInteger index = large.size().divide(BigInteger.valueOf(7));
+        assertThat(large.indexOf(large.get(index))).isEqualTo(index);
+    }
+
+    @Test
+    void testGroupErrors() {
+        assertThatThrownBy(() -> Strex.compile("(ab")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> Strex.compile("ab)")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> Strex.compile("(?=a)")).isInstanceOf(PatternSyntaxException.class);
+        check(Strex.compile("^(a|b)\\$$"), new String[] { "a$", "b$" });
+    }
     
-    
+    @Test
+    void testMinimizedAutomaton() {
+        assertThat(new StrexAutomaton(StrexParser.parse("x(ab|cb)|y(ab|cb)"), false).stateCount()).isEqualTo(4);
+        assertThat(new StrexAutomaton(StrexParser.parse("[ab]{0,3}"), false).stateCount()).isEqualTo(4);
+        check(Strex.compile("(ab|a)(b|c)?|abb"), new String[] { "a", "ab", "abb", "abc", "ac" });
+    }
+
+    @Test
+    void testSizeOfLength() {
+        Strex strex = Strex.compile("[A-Z]{2,4}\\d{3,6}");
+        assertThat(strex.sizeOfLength(4)).isEqualTo(0);
+        assertThat(strex.sizeOfLength(5)).isEqualTo(26L * 26 * 1000);
+        assertThat(strex.sizeOfLength(7)).isEqualTo((26L * 26 * 100000) + (26L * 26 * 26 * 10000) + (26L * 26 * 26 * 26 * 1000));
+        assertThat(strex.sizeOfLength(11)).isEqualTo(0);
+        assertThat(Strex.compile("\\d{3}").sizeOfLength(3)).isEqualTo(1000);
+        assertThat(Strex.compile("\\d{3}").sizeOfLength(2)).isEqualTo(0);
+    }
+
+    @Test
+    void testLargeVariableLength() {
+        Strex strex = Strex.compile("[a-z]{0,30}");
+        BigInteger size = BigInteger.ZERO;
+        for (int i = 0; i <= 30; i++) {
+            BigInteger lengthSize = BigInteger.valueOf(26L).pow(i);
+            assertThat(strex.sizeOfLength(i)).isEqualTo(lengthSize);
+            size = size.add(lengthSize);
+        }
+        assertThat(strex.size()).isEqualTo(size);
+        String text = "thequickbrownfoxjumpsoverthela";
+        assertThat(strex.get(strex.indexOf(text))).isEqualTo(text);
+        assertThat(strex.get(size.subtract(BigInteger.ONE))).isEqualTo("zzzzzzzzzzzzzzzzzzzzzzzzzzzzzz");
+    }
+
+    @Test
+    void testShortlexOrder() {
+        Strex strex = Strex.compile("[ab]{0,2}", StrexOrder.SHORTLEX);
+        assertThat(strex.order()).isEqualTo(StrexOrder.SHORTLEX);
+        check(strex, new String[] { "", "a", "b", "aa", "ab", "ba", "bb" });
+        assertThat(strex.indexOf("ba")).isEqualTo(5);
+        assertThat(strex.indexOf("c")).isEqualTo(-4);
+        assertThat(strex.indexOf("abc")).isEqualTo(-8);
+        assertThat(strex.ceilingIndex("ac")).isEqualTo(5);
+        assertThatThrownBy(() -> strex.prefixRange("a")).isInstanceOf(UnsupportedOperationException.class);
+        List<String> sorted = strex.stream().sorted(strex.spliterator().getComparator()).collect(Collectors.toList());
+        assertThat(sorted).containsExactly("", "a", "b", "aa", "ab", "ba", "bb");
+    }
+
+    @Test
+    void testShortlexIdentifiers() {
+        Strex strex = Strex.compile("(X\\d{3}|[A-Z]{2}\\d{2}|\\d{2})", StrexOrder.SHORTLEX);
+        assertThat(strex.size()).isEqualTo(100 + (26 * 26 * 100) + 1000);
+        assertThat(strex.get(0)).isEqualTo("00");
+        assertThat(strex.get(99)).isEqualTo("99");
+        assertThat(strex.get(100)).isEqualTo("AA00");
+        assertThat(strex.get(strex.size().subtract(BigInteger.ONE))).isEqualTo("ZZ99");
+        assertThat(strex.indexOf("X123")).isEqualTo(100 + (23 * 26 * 100) + 123);
+        assertThat(strex.iterator(BigInteger.valueOf(98), BigInteger.valueOf(101)))
+                .toIterable().containsExactly("98", "99", "AA00");
+        assertThat(Strex.compile("\\d{2}", StrexOrder.SHORTLEX).get(42)).isEqualTo("42");
+    }
+
+    @Test
+    void testUnion() {
+        Strex strex = Strex.union(
+                Strex.compile("\\d{4}"), Strex.compile("[A-Z]\\d{3}"), Strex.compile("X\\d{5}"));
+        assertThat(strex.size()).isEqualTo(10000 + 26000 + 100000);
+        assertThat(strex.get(9999)).isEqualTo("9999");
+        assertThat(strex.get(10000)).isEqualTo("A000");
+        assertThat(strex.indexOf("X000")).isEqualTo(33000);
+        assertThat(strex.indexOf("X00042")).isEqualTo(33043);
+        assertThat(strex.get(33101)).isEqualTo("X001");
+        assertThat(strex.indexOf("X0004")).isEqualTo(-33042);
+        assertThat(strex.prefixRange("X").size()).isEqualTo(101000);
+    }
+
+    @Test
+    void testUnionWithPredefinedClasses() {
+        assertThat(Strex.union(Strex.compile("\\s"), Strex.compile("\\s")).stream()).containsExactly("\t", " ");
+        Strex strex = Strex.compile("[a-c].");
+        Strex union = Strex.union(strex, Strex.compile("zz"));
+        assertThat(union.size()).isEqualTo(strex.size().add(BigInteger.ONE));
+        assertThat(union.get(3)).isEqualTo(strex.get(3));
+        assertThat(union.indexOf("a-")).isEqualTo(strex.indexOf("a-"));
+        assertThat(union.stream().limit(strex.size().longValue())).containsExactlyElementsOf(strex);
+        assertThat(union.get(strex.size())).isEqualTo("zz");
+    }
+
+    @Test
+    void testUnionOverlaps() {
+        check(Strex.union(Strex.compile("[ab]c"), Strex.compile("a[cd]")), new String[] { "ac", "ad", "bc" });
+        check(Strex.union(Strex.compile("\\d"), Strex.compile("\\d")), new String[] { "0", "1", "2" }, BigInteger.TEN);
+        check(Strex.union(Strex.compile("b?"), Strex.compile("a{1,2}")), new String[] { "", "a", "aa", "b" });
+        Strex single = Strex.compile("[xy]");
+        assertThat(Strex.union(single)).isSameAs(single);
+        assertThatThrownBy(() -> Strex.union()).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Strex.union(single, Strex.compile("z", StrexOrder.SHORTLEX)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testUnionOfUnions() {
+        Strex inner = Strex.union(Strex.compile("a(b|c)?"), Strex.compile("x"));
+        Strex strex = Strex.union(inner, Strex.compile("(ab){2}"), Strex.compile("c[dc]"));
+        check(strex, new String[] { "a", "ab", "abab", "ac", "cc", "cd", "x" });
+        assertThat(Strex.union(strex, inner).stream()).containsExactlyElementsOf(strex);
+    }
+
+    @Test
+    void testIntersect() {
+        Strex first = Strex.compile("[a-f]{3}\\d");
+        Strex second = Strex.compile("[d-z]{2}[0-9a-c][13579]");
+        assertThat(first.overlapSize(second)).isEqualTo(135);
+        StrexIntersection intersection = first.intersect(second);
+        Strex strex = intersection.strex();
+        assertThat(intersection.size()).isEqualTo(135);
+        assertThat(strex.get(0)).isEqualTo("dda1");
+        assertThat(strex.get(134)).isEqualTo("ffc9");
+        BigInteger index = strex.indexOf("efb7");
+        assertThat(intersection.toFirstIndex(index)).isEqualTo(first.indexOf("efb7"));
+        assertThat(intersection.toSecondIndex(index)).isEqualTo(second.indexOf("efb7"));
+        assertThat(intersection.fromFirstIndex(first.indexOf("efb7"))).isEqualTo(index);
+        assertThat(intersection.fromSecondIndex(second.indexOf("efb7"))).isEqualTo(index);
+        assertThat(intersection.fromFirstIndex(first.indexOf("efb8")).signum()).isNegative();
+    }
+
+    @Test
+    void testIntersectDisjoint() {
+        Strex strex = Strex.compile("[ab]x");
+        assertThat(strex.overlapSize(Strex.compile("[cd]x"))).isEqualTo(0);
+        assertThat(strex.intersect(Strex.compile("[cd]x")).strex().iterator().hasNext()).isFalse();
+        assertThat(strex.overlapSize(Strex.compile("[ab]xy"))).isEqualTo(0);
+        assertThat(strex.intersect(Strex.compile("[ab]xy")).size()).isEqualTo(0);
+        assertThat(Strex.compile("\\w{2}").overlapSize(Strex.compile("[a-c_]{2}"))).isEqualTo(16);
+        assertThatThrownBy(() -> strex.intersect(Strex.compile("[ab]x?")))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
     void check(Strex strex, String[] outputs) {
         check(strex, outputs, BigInteger.valueOf(outputs.length));
     }